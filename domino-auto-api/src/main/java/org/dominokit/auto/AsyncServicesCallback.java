@@ -0,0 +1,32 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.util.List;
+
+/**
+ * Receives the services loaded asynchronously by a generated {@code loadAsync} method.
+ *
+ * @param <S> the service type
+ */
+public interface AsyncServicesCallback<S> {
+
+  /** @param services the created implementations, in the loader order. */
+  void onSuccess(List<S> services);
+
+  /** @param reason why the implementations could not be loaded or created. */
+  void onFailure(Throwable reason);
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Collects the implementations created behind one or more split points and reports them to an
+ * {@link AsyncServicesCallback} once all of them are available, in the loader order.
+ *
+ * <p>Only the first failure is reported, and nothing is reported after a failure.
+ *
+ * @param <S> the service type
+ */
+public final class AsyncServicesJoin<S> {
+
+  private final Object[] services;
+  private final AsyncServicesCallback<S> callback;
+  private int remaining;
+  private boolean done;
+
+  /**
+   * @param count the number of implementations to wait for
+   * @param callback receives the result
+   */
+  public AsyncServicesJoin(int count, AsyncServicesCallback<S> callback) {
+    this.services = new Object[count];
+    this.remaining = count;
+    this.callback = callback;
+  }
+
+  /**
+   * Creates the implementation at the given position, a failure to create it is reported to the
+   * callback.
+   *
+   * @param index the implementation position in the loader order
+   * @param factory creates the implementation
+   */
+  public void load(int index, Supplier<? extends S> factory) {
+    S service;
+    try {
+      service = factory.get();
+    } catch (RuntimeException e) {
+      onFailure(e);
+      return;
+    }
+    onLoaded(index, service);
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized void onLoaded(int index, S service) {
+    if (done) {
+      return;
+    }
+    services[index] = service;
+    remaining--;
+    if (remaining == 0) {
+      done = true;
+      List<S> result = new ArrayList<>(services.length);
+      for (Object loaded : services) {
+        result.add((S) loaded);
+      }
+      callback.onSuccess(result);
+    }
+  }
+
+  /** @param reason reported to the callback unless a result or a failure was already reported. */
+  public synchronized void onFailure(Throwable reason) {
+    if (done) {
+      return;
+    }
+    done = true;
+    callback.onFailure(reason);
+  }
+}
@@ -26,4 +26,37 @@ public @interface DominoAuto {
   String[] exclude() default {};
 
   String[] include() default {};
+
+  /**
+   * Packages or services, matched like {@link #include()}, whose loaders also get a {@code
+   * loadAsync} method placing the implementations behind code split points.
+   */
+  String[] async() default {};
+
+  /**
+   * Packages or services, matched like {@link #include()}, whose loaders also get an {@code
+   * initAll(Executor, Consumer)} method initializing the independent implementations concurrently.
+   * The method uses {@code java.util.concurrent} and is meant for the JVM only.
+   */
+  String[] initAll() default {};
+
+  /**
+   * Where the service entries are discovered, the modes of all the {@code DominoAuto} elements of a
+   * compilation are combined.
+   */
+  Discovery discovery() default Discovery.CLASSPATH;
+
+  /** The sources of service entries. */
+  enum Discovery {
+    /** The {@code META-INF/services} files of the scanned classpath. */
+    CLASSPATH,
+    /**
+     * The current compilation only, the {@code META-INF/services} files of the class output and
+     * source path directories and the types annotated with {@code @AutoService}. No classpath scan
+     * is performed.
+     */
+    SOURCES,
+    /** Both the classpath and the current compilation. */
+    ALL
+  }
 }
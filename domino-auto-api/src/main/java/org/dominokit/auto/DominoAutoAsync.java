@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.util.function.Consumer;
+
+/**
+ * The split point hook used by generated {@code loadAsync} methods when they are not generated with
+ * GWT2 {@code GWT.runAsync} split points.
+ *
+ * <p>The default hook runs the code synchronously. Applications install a hook that loads the code
+ * behind the split point on demand, e.g. a dynamically imported chunk in J2CL.
+ */
+public final class DominoAutoAsync {
+
+  /** Runs code placed behind a split point once it is available. */
+  @FunctionalInterface
+  public interface SplitPointHook {
+
+    /**
+     * @param splitPoint the class identifying the split point, the loader or the implementation
+     * @param onLoaded the code to run once the split point is loaded
+     * @param onFailure to be called if the split point cannot be loaded
+     */
+    void runAsync(Class<?> splitPoint, Runnable onLoaded, Consumer<Throwable> onFailure);
+  }
+
+  private static SplitPointHook hook = (splitPoint, onLoaded, onFailure) -> onLoaded.run();
+
+  private DominoAutoAsync() {}
+
+  /** @param hook the hook used by all generated loaders from now on. */
+  public static void setSplitPointHook(SplitPointHook hook) {
+    DominoAutoAsync.hook = hook;
+  }
+
+  /** Runs code behind a split point using the installed {@link SplitPointHook}. */
+  public static void runAsync(
+      Class<?> splitPoint, Runnable onLoaded, Consumer<Throwable> onFailure) {
+    hook.runAsync(splitPoint, onLoaded, onFailure);
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.util.function.Supplier;
+
+/**
+ * Times the instantiation of service implementations in loaders generated with the {@code
+ * dominoAutoTiming} option, loaders generated without it do not reference this class.
+ *
+ * <p>The durations are measured with {@link System#nanoTime()}, which J2CL and GWT back with {@code
+ * performance.now()} in the browser. Nothing is measured until a listener is installed.
+ */
+public final class DominoAutoTiming {
+
+  /** Receives the time spent creating each implementation. */
+  @FunctionalInterface
+  public interface InstantiationListener {
+
+    /**
+     * @param service the binary name of the service
+     * @param implementation the binary name of the implementation
+     * @param durationNanos the time spent creating the implementation, or reading its singleton
+     */
+    void onInstantiated(String service, String implementation, long durationNanos);
+  }
+
+  private static InstantiationListener listener;
+
+  private DominoAutoTiming() {}
+
+  /** @param listener the listener notified by all generated loaders from now on, or null. */
+  public static void setListener(InstantiationListener listener) {
+    DominoAutoTiming.listener = listener;
+  }
+
+  /** Creates an implementation, reporting the time spent to the installed listener. */
+  public static <T> T time(String service, String implementation, Supplier<T> factory) {
+    InstantiationListener current = listener;
+    if (current == null) {
+      return factory.get();
+    }
+    long start = System.nanoTime();
+    T instance = factory.get();
+    current.onInstantiated(service, implementation, System.nanoTime() - start);
+    return instance;
+  }
+}
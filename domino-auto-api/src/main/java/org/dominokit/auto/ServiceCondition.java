@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Registers a service implementation only when a compile time property matches, implementations
+ * whose condition does not match are left out of the generated loaders.
+ *
+ * <p>The property is resolved like the processor options: a JVM system property, then an
+ * environment variable named either like the property or in {@code UPPER_SNAKE_CASE}, then an
+ * annotation processor option.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface ServiceCondition {
+
+  /** The name of the property, e.g. {@code "appProfile"}. */
+  String property();
+
+  /**
+   * The values, compared ignoring case, that register the implementation. When empty, any value
+   * other than {@code false} does.
+   */
+  String[] havingValue() default {};
+
+  /** Registers the implementation when the property is not set. */
+  boolean matchIfMissing() default false;
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Orders the implementations of a service in the generated loaders. The processor sorts the
+ * implementations at compile time so that every implementation comes after the implementations it
+ * depends on, then by ascending {@link #value()}. Dependency cycles are compilation errors.
+ *
+ * <p>Implementations without an order have the order {@code 0}, implementations with the same order
+ * keep their name order.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface ServiceOrder {
+
+  /** The order of the implementation, lower orders come first. */
+  int value() default 0;
+
+  /**
+   * The implementations of the same service that must come, and be initialized, before this one.
+   * Types that are not implementations of the loaded service are ignored.
+   */
+  Class<?>[] dependsOn() default {};
+}
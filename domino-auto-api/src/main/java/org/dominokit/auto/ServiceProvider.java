@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.util.function.Supplier;
+
+/**
+ * A lazily instantiated service implementation, in the style of {@code
+ * java.util.ServiceLoader.Provider}.
+ *
+ * <p>The implementation constructor is only invoked when {@link #get()} is called.
+ *
+ * @param <S> the service type
+ */
+public interface ServiceProvider<S> {
+
+  /** @return the implementation type, available without instantiating it. */
+  Class<? extends S> type();
+
+  /** @return a new instance of the implementation. */
+  S get();
+
+  /**
+   * Creates a provider for an implementation type.
+   *
+   * @param type the implementation type
+   * @param factory creates new instances of the implementation
+   * @param <S> the service type
+   * @return the provider
+   */
+  static <S> ServiceProvider<S> of(Class<? extends S> type, Supplier<? extends S> factory) {
+    return new ServiceProvider<S>() {
+      @Override
+      public Class<? extends S> type() {
+        return type;
+      }
+
+      @Override
+      public S get() {
+        return factory.get();
+      }
+    };
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets how the generated loaders create a service implementation. Implementations without a scope
+ * are prototypes.
+ *
+ * <p>A singleton is created once, on first use, in a generated {@code
+ * [Owner]_[Implementation]_Singleton} holder placed next to the first loader, or registry, of the
+ * compilation listing it. It is shared by the classes generated in that compilation only, loaders
+ * generated in another module hold their own instance.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface ServiceScope {
+  Scope value() default Scope.SINGLETON;
+
+  /** The implementation scopes. */
+  enum Scope {
+    /** One instance shared by the loaders generated in the same compilation and their calls. */
+    SINGLETON,
+    /** A new instance per loader call. */
+    PROTOTYPE
+  }
+}
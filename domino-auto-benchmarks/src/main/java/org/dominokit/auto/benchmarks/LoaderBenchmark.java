@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+import org.dominokit.auto.benchmarks.services.Greeter;
+import org.dominokit.auto.benchmarks.services.Greeter_ServiceLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Compares the steady state cost of the generated loader with {@link ServiceLoader}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoaderBenchmark {
+
+  @Benchmark
+  public List<Greeter> generatedLoad() {
+    return Greeter_ServiceLoader.load();
+  }
+
+  @Benchmark
+  public List<Greeter> generatedLoadCached() {
+    return Greeter_ServiceLoader.loadCached();
+  }
+
+  @Benchmark
+  public void generatedForEach(Blackhole blackhole) {
+    Greeter_ServiceLoader.forEach(blackhole::consume);
+  }
+
+  @Benchmark
+  public List<Greeter> serviceLoader() {
+    List<Greeter> greeters = new ArrayList<>();
+    ServiceLoader.load(Greeter.class).forEach(greeters::add);
+    return greeters;
+  }
+}
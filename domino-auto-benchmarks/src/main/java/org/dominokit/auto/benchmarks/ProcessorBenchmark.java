@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.dominokit.auto.DominoAutoProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a compilation running {@link DominoAutoProcessor} against a synthetic classpath, which
+ * covers the classpath scan, the resolution of the services and the generation of the loaders.
+ *
+ * <p>The compilation runs with {@code -proc:only}, so the generated loaders are written but not
+ * compiled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessorBenchmark {
+
+  @Param({"1000", "5000", "10000"})
+  public int serviceFiles;
+
+  @Param({"10", "100"})
+  public int jars;
+
+  @Param({"2"})
+  public int implsPerService;
+
+  /** The loader generation parallelism, {@code 0} uses the available processors. */
+  @Param({"1", "0"})
+  public int parallelism;
+
+  private Path root;
+  private List<String> options;
+  private List<File> sources;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("domino-auto-benchmark");
+    List<Path> classpath =
+        SyntheticClasspath.create(root.resolve("lib"), serviceFiles, jars, implsPerService);
+    Path source = root.resolve("src/bench/Marker.java");
+    Files.createDirectories(source.getParent());
+    Files.write(source, "package bench;\nclass Marker {}\n".getBytes(StandardCharsets.UTF_8));
+    sources = List.of(source.toFile());
+
+    String syntheticClasspath =
+        classpath.stream().map(Path::toString).collect(Collectors.joining(File.pathSeparator));
+    options =
+        Arrays.asList(
+            "-proc:only",
+            "-classpath",
+            System.getProperty("java.class.path") + File.pathSeparator + syntheticClasspath,
+            "-d",
+            Files.createDirectories(root.resolve("out")).toString(),
+            "-s",
+            Files.createDirectories(root.resolve("generated")).toString(),
+            "-AdominoAutoInclude=" + SyntheticClasspath.INCLUDE,
+            "-AdominoAutoClasspath=" + syntheticClasspath,
+            "-AdominoAutoSkipUnchanged=false",
+            "-AdominoAutoParallelism=" + parallelism);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(root)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Benchmark
+  public boolean scanAndGenerate() throws IOException {
+    JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager fileManager =
+        javac.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+      Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(sources);
+      JavaCompiler.CompilationTask task =
+          javac.getTask(null, fileManager, diagnostic -> {}, options, null, units);
+      task.setProcessors(List.of(new DominoAutoProcessor()));
+      return task.call();
+    }
+  }
+}
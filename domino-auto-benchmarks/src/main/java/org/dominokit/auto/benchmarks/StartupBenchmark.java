@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+import org.dominokit.auto.benchmarks.services.DominoServices;
+import org.dominokit.auto.benchmarks.services.Greeter;
+import org.dominokit.auto.benchmarks.services.Greeter_ServiceLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the first load in a fresh JVM, including class loading and the reading of the services
+ * files, which is what an application pays at startup.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class StartupBenchmark {
+
+  @Benchmark
+  public List<Greeter> generatedLoad() {
+    return Greeter_ServiceLoader.load();
+  }
+
+  /** The JVM replacement for {@link ServiceLoader}, a switch on the service name. */
+  @Benchmark
+  public List<Greeter> dominoServices() {
+    return DominoServices.load(Greeter.class);
+  }
+
+  @Benchmark
+  public List<Greeter> serviceLoader() {
+    List<Greeter> greeters = new ArrayList<>();
+    ServiceLoader.load(Greeter.class).forEach(greeters::add);
+    return greeters;
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Writes jars holding synthetic services, their {@code META-INF/services} files and the compiled
+ * service and implementation classes, so that the processor resolves them like real dependencies.
+ * The services are in the {@value #INCLUDE} package and each jar also holds unrelated resources the
+ * scanner has to skip.
+ */
+final class SyntheticClasspath {
+
+  static final String INCLUDE = "bench";
+
+  private static final int FILLERS_PER_JAR = 50;
+
+  private SyntheticClasspath() {}
+
+  /**
+   * @param directory where the jars are written
+   * @param serviceFiles the total number of services files, spread evenly over the jars
+   * @param jars the number of jars
+   * @param implsPerService the number of implementations listed in each services file
+   * @return the written jars
+   */
+  static List<Path> create(Path directory, int serviceFiles, int jars, int implsPerService)
+      throws IOException {
+    Path sources = directory.resolve("sources");
+    Path classes = directory.resolve("classes");
+    for (int service = 0; service < serviceFiles; service++) {
+      String servicePackage = INCLUDE + ".jar" + service % jars;
+      String serviceName = "Service" + service;
+      write(
+          sources.resolve(servicePackage.replace('.', '/')).resolve(serviceName + ".java"),
+          "package " + servicePackage + ";\npublic interface " + serviceName + " {}\n");
+      for (int impl = 0; impl < implsPerService; impl++) {
+        String implName = serviceName + "Impl" + impl;
+        write(
+            sources.resolve(servicePackage.replace('.', '/')).resolve("impl/" + implName + ".java"),
+            "package "
+                + servicePackage
+                + ".impl;\npublic class "
+                + implName
+                + " implements "
+                + servicePackage
+                + "."
+                + serviceName
+                + " {}\n");
+      }
+    }
+    compile(sources, classes);
+
+    List<Path> classpath = new ArrayList<>(jars);
+    for (int jar = 0; jar < jars; jar++) {
+      String servicePackage = INCLUDE + ".jar" + jar;
+      Path jarFile = directory.resolve("lib-" + jar + ".jar");
+      try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jarFile))) {
+        for (int filler = 0; filler < FILLERS_PER_JAR; filler++) {
+          putEntry(
+              out,
+              INCLUDE + "/jar" + jar + "/Filler" + filler + ".txt",
+              "filler".getBytes(StandardCharsets.UTF_8));
+        }
+        Path packageClasses = classes.resolve(servicePackage.replace('.', '/'));
+        try (Stream<Path> files = Files.walk(packageClasses)) {
+          for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+            putEntry(
+                out,
+                classes.relativize(file).toString().replace('\\', '/'),
+                Files.readAllBytes(file));
+          }
+        }
+        for (int service = jar; service < serviceFiles; service += jars) {
+          StringBuilder impls = new StringBuilder("# synthetic services file\n");
+          for (int impl = 0; impl < implsPerService; impl++) {
+            impls
+                .append(servicePackage)
+                .append(".impl.Service")
+                .append(service)
+                .append("Impl")
+                .append(impl)
+                .append('\n');
+          }
+          putEntry(
+              out,
+              "META-INF/services/" + servicePackage + ".Service" + service,
+              impls.toString().getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      classpath.add(jarFile);
+    }
+    return classpath;
+  }
+
+  private static void compile(Path sources, Path classes) throws IOException {
+    List<String> arguments = new ArrayList<>();
+    arguments.add("-proc:none");
+    arguments.add("-d");
+    arguments.add(Files.createDirectories(classes).toString());
+    try (Stream<Path> files = Files.walk(sources)) {
+      files
+          .filter(file -> file.toString().endsWith(".java"))
+          .map(Path::toString)
+          .forEach(arguments::add);
+    }
+    JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+    if (javac.run(null, null, null, arguments.toArray(new String[0])) != 0) {
+      throw new IOException("Failed to compile the synthetic services");
+    }
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void putEntry(JarOutputStream out, String name, byte[] content)
+      throws IOException {
+    out.putNextEntry(new JarEntry(name));
+    out.write(content);
+    out.closeEntry();
+  }
+}
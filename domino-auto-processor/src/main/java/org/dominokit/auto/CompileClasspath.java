@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.tools.JavaFileManager;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/** Resolves the classpath, and the other locations, javac is compiling against. */
+class CompileClasspath {
+
+  private CompileClasspath() {}
+
+  /**
+   * Parses an explicitly configured classpath, entries are separated by the platform path
+   * separator.
+   */
+  static List<File> parse(String classpath) {
+    List<File> elements = new ArrayList<>();
+    Arrays.stream(classpath.split(File.pathSeparator))
+        .map(String::trim)
+        .filter(entry -> !entry.isEmpty())
+        .map(File::new)
+        .forEach(elements::add);
+    return elements;
+  }
+
+  /**
+   * Reads {@link StandardLocation#CLASS_PATH} from the javac file manager.
+   *
+   * @see #fromJavac(ProcessingEnvironment, JavaFileManager.Location)
+   */
+  static Optional<List<File>> fromJavac(ProcessingEnvironment processingEnv) {
+    return fromJavac(processingEnv, StandardLocation.CLASS_PATH);
+  }
+
+  /**
+   * Reads a location, e.g. {@link StandardLocation#SOURCE_PATH}, from the javac file manager.
+   *
+   * <p>The file manager is not reachable through the public processing API, this only works with
+   * javac when the compiler internals are accessible to the processor, an empty result means the
+   * caller has to fall back to another classpath source. A location javac has no value for reads as
+   * an empty list.
+   */
+  static Optional<List<File>> fromJavac(
+      ProcessingEnvironment processingEnv, JavaFileManager.Location location) {
+    try {
+      Object context = processingEnv.getClass().getMethod("getContext").invoke(processingEnv);
+      Object fileManager =
+          context.getClass().getMethod("get", Class.class).invoke(context, JavaFileManager.class);
+      if (!(fileManager instanceof StandardJavaFileManager)) {
+        return Optional.empty();
+      }
+      Iterable<? extends File> files =
+          ((StandardJavaFileManager) fileManager).getLocation(location);
+      if (files == null) {
+        return Optional.of(Collections.emptyList());
+      }
+      List<File> elements = new ArrayList<>();
+      files.forEach(elements::add);
+      return Optional.of(elements);
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      return Optional.empty();
+    }
+  }
+}
@@ -19,25 +19,31 @@ import static java.util.Objects.nonNull;
 
 import com.google.auto.service.AutoService;
 import com.squareup.javapoet.ClassName;
-import com.squareup.javapoet.CodeBlock;
-import com.squareup.javapoet.JavaFile;
-import com.squareup.javapoet.MethodSpec;
-import com.squareup.javapoet.ParameterizedTypeName;
-import com.squareup.javapoet.TypeSpec;
-import io.github.classgraph.ClassGraph;
-import io.github.classgraph.Resource;
-import io.github.classgraph.ScanResult;
-import java.nio.charset.StandardCharsets;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.Filer;
 import javax.annotation.processing.Messager;
@@ -46,31 +52,161 @@ import javax.annotation.processing.Processor;
 import javax.annotation.processing.RoundEnvironment;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
-import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
 
 @AutoService(Processor.class)
 public class DominoAutoProcessor extends AbstractProcessor implements HasProcessorEnv {
 
   static final String DOMINO_AUTO_INCLUDE = "dominoAutoInclude";
   static final String DOMINO_AUTO_EXCLUDE = "dominoAutoExclude";
+  static final String DOMINO_AUTO_SCAN_CACHE = "dominoAutoScanCache";
+  static final String DOMINO_AUTO_SCAN_CACHE_FILE = "dominoAutoScanCacheFile";
+  static final String DOMINO_AUTO_FORCE_RESCAN = "dominoAutoForceRescan";
+  static final String DOMINO_AUTO_CLASSPATH = "dominoAutoClasspath";
+  static final String DOMINO_AUTO_SCAN_COMPILE_CLASSPATH = "dominoAutoScanCompileClasspath";
+  static final String DOMINO_AUTO_SCAN_THREADS = "dominoAutoScanThreads";
+  static final String DOMINO_AUTO_ACCEPT_JARS = "dominoAutoAcceptJars";
+  static final String DOMINO_AUTO_REJECT_JARS = "dominoAutoRejectJars";
+  static final String DOMINO_AUTO_SKIP_UNCHANGED = "dominoAutoSkipUnchanged";
+  static final String DOMINO_AUTO_VALIDATION = "dominoAutoValidation";
+  static final String DOMINO_AUTO_PRUNE_INVALID = "dominoAutoPruneInvalid";
+  static final String DOMINO_AUTO_ASYNC = "dominoAutoAsync";
+  static final String DOMINO_AUTO_ASYNC_SPLIT_POINTS = "dominoAutoAsyncSplitPoints";
+  static final String DOMINO_AUTO_ASYNC_SPLIT = "dominoAutoAsyncSplit";
+  static final String DOMINO_AUTO_INIT_ALL = "dominoAutoInitAll";
+  static final String DOMINO_AUTO_REGISTRY = "dominoAutoRegistry";
+  static final String DOMINO_AUTO_REGISTRY_NAME = "dominoAutoRegistryName";
+  static final String DOMINO_AUTO_REGISTRY_DELEGATES = "dominoAutoRegistryDelegates";
+  static final String DOMINO_AUTO_VERBOSITY = "dominoAutoVerbosity";
+  static final String DOMINO_AUTO_REPORT = "dominoAutoReport";
+  static final String DOMINO_AUTO_DISCOVERY = "dominoAutoDiscovery";
+  static final String DOMINO_AUTO_WRITE_INDEX = "dominoAutoWriteIndex";
+  static final String DOMINO_AUTO_SHARED_SCAN_CACHE = "dominoAutoSharedScanCache";
+  static final String DOMINO_AUTO_SERVICES = "dominoAutoServices";
+  static final String DOMINO_AUTO_TIMING = "dominoAutoTiming";
+  static final String DOMINO_AUTO_PARALLELISM = "dominoAutoParallelism";
+  static final String DOMINO_AUTO_SERVICES_NAME = "dominoAutoServicesName";
+  static final String DOMINO_AUTO_SERVICES_FALLBACK = "dominoAutoServicesFallback";
+  static final String DOMINO_AUTO_SHARED_SCAN_CACHE_SIZE = "dominoAutoSharedScanCacheSize";
+
+  private static final String DEFAULT_SCAN_CACHE_FILE = "domino-auto-scan.cache";
+  private static final String DEFAULT_REGISTRY_NAME = "DominoAutoRegistry";
+  private static final String DEFAULT_SERVICES_NAME = "DominoServices";
+  private static final int DEFAULT_SHARED_SCAN_CACHE_SIZE = 1024;
+  private static final String JAVAC_INTERNALS_HINT =
+      " On JDK 16 and later the javac internals have to be opened to the processor, e.g. using"
+          + " -J--add-opens=jdk.compiler/com.sun.tools.javac.processing=ALL-UNNAMED"
+          + " -J--add-opens=jdk.compiler/com.sun.tools.javac.util=ALL-UNNAMED";
+  static final String REPORT_FILE = "META-INF/domino-auto/build-report.json";
+
+  /** How much the processor reports as {@code NOTE}s, warnings and errors are always reported. */
+  enum Verbosity {
+    /** Nothing. */
+    QUIET,
+    /** A one-line summary per compilation. */
+    SUMMARY,
+    /** The summary, the rounds, the scan and every service entry. */
+    VERBOSE
+  }
 
   private ProcessingEnvironment env;
   private SourceUtil sourceUtil;
 
+  private final Set<String> includes = new HashSet<>();
+  private final Set<String> exclude = new HashSet<>();
+  private final Set<String> async = new HashSet<>();
+  private final Set<String> initAll = new HashSet<>();
+  private final Set<DominoAuto.Discovery> discoveries = EnumSet.noneOf(DominoAuto.Discovery.class);
+  private final Map<String, Set<String>> annotatedServices = new HashMap<>();
+  private DominoAuto.Discovery configuredDiscovery;
+  private final Set<String> originatingPackages = new HashSet<>();
+  private final Set<String> originatingTypes = new HashSet<>();
+  private boolean configuredOutsideSources;
+  private boolean writeIndex;
+  private boolean warnedSourcePath;
+  private final Set<String> writtenLoaders = new HashSet<>();
+  // filled by the scanner threads, reported on the compiler thread
+  private final Set<String> invalidEntries = Collections.synchronizedSet(new TreeSet<>());
+  private final Set<String> reportedInvalidEntries = new HashSet<>();
+  private final ProcessorMetrics metrics = new ProcessorMetrics();
+  private Verbosity verbosity;
+  private int round;
+  private String generatedConfiguration;
+  private boolean generated;
+
   @Override
   public synchronized void init(ProcessingEnvironment processingEnv) {
     super.init(processingEnv);
+    long start = System.nanoTime();
     this.env = processingEnv;
     this.sourceUtil = new SourceUtil(this);
+    this.verbosity = enumValue(DOMINO_AUTO_VERBOSITY, Verbosity.class, Verbosity.SUMMARY);
+    this.includes.addAll(resolveConfiguredPackages(DOMINO_AUTO_INCLUDE));
+    this.exclude.addAll(resolveConfiguredPackages(DOMINO_AUTO_EXCLUDE));
+    this.async.addAll(resolveConfiguredPackages(DOMINO_AUTO_ASYNC));
+    this.initAll.addAll(resolveConfiguredPackages(DOMINO_AUTO_INIT_ALL));
+    if (nonNull(resolveConfiguredValue(DOMINO_AUTO_DISCOVERY))) {
+      this.configuredDiscovery =
+          enumValue(
+              DOMINO_AUTO_DISCOVERY, DominoAuto.Discovery.class, DominoAuto.Discovery.CLASSPATH);
+    }
+    this.configuredOutsideSources = !includes.isEmpty();
+    this.writeIndex = isEnabled(DOMINO_AUTO_WRITE_INDEX);
+    metrics.time(ProcessorMetrics.CONFIGURATION, start);
   }
 
   @Override
   public Set<String> getSupportedAnnotationTypes() {
-    return new HashSet<>(Arrays.asList("*"));
+    // Configuration coming from options, system properties or environment variables must be honored
+    // even when no source in the compilation carries @DominoAuto, as must the index of a library.
+    if (configuredOutsideSources || writeIndex) {
+      return new HashSet<>(Arrays.asList("*"));
+    }
+    return new HashSet<>(Arrays.asList(DominoAuto.class.getCanonicalName()));
+  }
+
+  @Override
+  public Set<String> getSupportedOptions() {
+    return new HashSet<>(
+        Arrays.asList(
+            DOMINO_AUTO_INCLUDE,
+            DOMINO_AUTO_EXCLUDE,
+            DOMINO_AUTO_SCAN_CACHE,
+            DOMINO_AUTO_SCAN_CACHE_FILE,
+            DOMINO_AUTO_FORCE_RESCAN,
+            DOMINO_AUTO_CLASSPATH,
+            DOMINO_AUTO_SCAN_COMPILE_CLASSPATH,
+            DOMINO_AUTO_SCAN_THREADS,
+            DOMINO_AUTO_ACCEPT_JARS,
+            DOMINO_AUTO_REJECT_JARS,
+            DOMINO_AUTO_SKIP_UNCHANGED,
+            DOMINO_AUTO_VALIDATION,
+            DOMINO_AUTO_PRUNE_INVALID,
+            DOMINO_AUTO_ASYNC,
+            DOMINO_AUTO_ASYNC_SPLIT_POINTS,
+            DOMINO_AUTO_ASYNC_SPLIT,
+            DOMINO_AUTO_INIT_ALL,
+            DOMINO_AUTO_REGISTRY,
+            DOMINO_AUTO_REGISTRY_NAME,
+            DOMINO_AUTO_REGISTRY_DELEGATES,
+            DOMINO_AUTO_VERBOSITY,
+            DOMINO_AUTO_REPORT,
+            DOMINO_AUTO_DISCOVERY,
+            DOMINO_AUTO_WRITE_INDEX,
+            DOMINO_AUTO_SHARED_SCAN_CACHE,
+            DOMINO_AUTO_SHARED_SCAN_CACHE_SIZE,
+            DOMINO_AUTO_SERVICES,
+            DOMINO_AUTO_SERVICES_NAME,
+            DOMINO_AUTO_SERVICES_FALLBACK,
+            DOMINO_AUTO_TIMING,
+            DOMINO_AUTO_PARALLELISM));
   }
 
   @Override
@@ -80,110 +216,793 @@ public class DominoAutoProcessor extends AbstractProcessor implements HasProcess
 
   @Override
   public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    long roundStart = System.nanoTime();
+    round++;
+    metrics.count(ProcessorMetrics.ROUNDS, 1);
     try {
-
       Set<? extends Element> dominoAutoElements =
           roundEnv.getElementsAnnotatedWith(DominoAuto.class);
 
-      Set<String> includes = new HashSet<>(resolveConfiguredPackages(DOMINO_AUTO_INCLUDE));
-      Set<String> exclude = new HashSet<>(resolveConfiguredPackages(DOMINO_AUTO_EXCLUDE));
-
       dominoAutoElements.forEach(
           element -> {
             includes.addAll(Arrays.asList(element.getAnnotation(DominoAuto.class).include()));
             exclude.addAll(Arrays.asList(element.getAnnotation(DominoAuto.class).exclude()));
+            async.addAll(Arrays.asList(element.getAnnotation(DominoAuto.class).async()));
+            initAll.addAll(Arrays.asList(element.getAnnotation(DominoAuto.class).initAll()));
+            discoveries.add(element.getAnnotation(DominoAuto.class).discovery());
+            if (element instanceof PackageElement) {
+              originatingPackages.add(((PackageElement) element).getQualifiedName().toString());
+            } else if (element instanceof TypeElement) {
+              originatingTypes.add(((TypeElement) element).getQualifiedName().toString());
+            }
           });
+      metrics.time(ProcessorMetrics.CONFIGURATION, roundStart);
+      if (writeIndex || readsSources(discovery())) {
+        collectAnnotatedServices(roundEnv);
+      }
 
-      Map<String, Set<String>> services = new HashMap<>();
-
-      try (ScanResult scanResult =
-          new ClassGraph().acceptPathsNonRecursive("META-INF/services").scan()) {
-        scanResult
-            .getAllResources()
-            .forEachByteArrayThrowingIOException(
-                (Resource res, byte[] content) -> {
-                  String serviceName = res.getPath().replace("META-INF/services/", "");
-
-                  if (includes.stream().anyMatch(serviceName::startsWith)
-                      && exclude.stream().noneMatch(serviceName::startsWith)) {
-                    if (!services.containsKey(serviceName)) {
-                      services.put(serviceName, new HashSet<>());
-                    }
-                    Stream<String> impls = new String(content, StandardCharsets.UTF_8).lines();
-                    impls
-                        .filter(
-                            impl ->
-                                nonNull(impl) && !impl.trim().isEmpty() && !impl.startsWith("#"))
-                        .forEach(
-                            impl -> {
-                              services.get(serviceName).add(impl);
-                            });
-                  }
-                });
+      // Loaders are written in the first round with a configuration, so that sources of the same
+      // compilation can reference them. Later rounds only scan again if @DominoAuto elements
+      // generated by other processors change the configuration.
+      String configuration = generationConfiguration();
+      if (!configuration.equals(generatedConfiguration)) {
+        generatedConfiguration = configuration;
+        generateServiceLoaders();
+      }
+      if (roundEnv.processingOver() && writeIndex) {
+        writeIndex();
       }
-      writeServiceLoaders(services);
     } catch (Exception ex) {
       SourceUtil.errorStackTrace(env.getMessager(), ex);
       env.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to generate service loaders.");
+    } finally {
+      note(
+          Verbosity.VERBOSE,
+          "domino-auto round "
+              + round
+              + " completed in "
+              + elapsedMillis(roundStart)
+              + " ms"
+              + (roundEnv.processingOver() ? " (final round)" : ""));
+      if (roundEnv.processingOver() && generated) {
+        report();
+      }
     }
     return false;
   }
 
-  private void writeServiceLoaders(Map<String, Set<String>> services) {
-    services.forEach(
-        (key, impls) -> {
-          CodeBlock.Builder bodyBuilder = CodeBlock.builder();
-          bodyBuilder.addStatement(
-              "$T<$T> services = new $T()", List.class, ClassName.bestGuess(key), ArrayList.class);
-          impls.stream()
-              .forEach(
-                  impl -> {
-                    env.getMessager()
-                        .printMessage(Diagnostic.Kind.WARNING, "Adding service entry : " + impl);
-                    bodyBuilder.addStatement("services.add(new $T())", ClassName.bestGuess(impl));
-                  });
-
-          bodyBuilder.addStatement("return services");
-          MethodSpec.Builder loaderClassLoadMethod =
-              MethodSpec.methodBuilder("load")
-                  .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
-                  .returns(
-                      ParameterizedTypeName.get(
-                          ClassName.get(List.class), ClassName.bestGuess(key)));
-          TypeSpec.Builder loaderClassBuilder =
-              TypeSpec.classBuilder(getClassName(key) + "_ServiceLoader")
-                  .addModifiers(Modifier.PUBLIC)
-                  .addMethod(loaderClassLoadMethod.addCode(bodyBuilder.build()).build());
-          TypeSpec classSpec = loaderClassBuilder.build();
-
-          try {
-            JavaFile.builder(getPackageName(key), classSpec)
-                .build()
-                .writeTo(processingEnv.getFiler());
-          } catch (Exception e) {
-            messager()
-                .printMessage(
-                    Diagnostic.Kind.WARNING, "Failed to write service loader : " + e.getMessage());
+  private void report() {
+    note(Verbosity.SUMMARY, metrics.summary());
+    if (!isEnabled(DOMINO_AUTO_REPORT)) {
+      return;
+    }
+    try {
+      FileObject report = getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", REPORT_FILE);
+      try (Writer writer = report.openWriter()) {
+        writer.write(metrics.toJson());
+      }
+    } catch (IOException e) {
+      messager()
+          .printMessage(
+              Diagnostic.Kind.WARNING, "Failed to write domino-auto report : " + e.getMessage());
+    }
+  }
+
+  private void note(Verbosity level, String message) {
+    if (verbosity.compareTo(level) >= 0) {
+      messager().printMessage(Diagnostic.Kind.NOTE, message);
+    }
+  }
+
+  private String generationConfiguration() {
+    return new TreeSet<>(includes)
+        + "|"
+        + new TreeSet<>(exclude)
+        + "|"
+        + new TreeSet<>(async)
+        + "|"
+        + new TreeSet<>(initAll)
+        + "|"
+        + discovery();
+  }
+
+  /**
+   * Resolves the discovery modes, {@link #DOMINO_AUTO_DISCOVERY} wins over the modes of the {@link
+   * DominoAuto} elements, which are combined. The classpath is scanned when nothing is configured.
+   */
+  private Set<DominoAuto.Discovery> discovery() {
+    if (nonNull(configuredDiscovery)) {
+      return EnumSet.of(configuredDiscovery);
+    }
+    if (discoveries.isEmpty()) {
+      return EnumSet.of(DominoAuto.Discovery.CLASSPATH);
+    }
+    return discoveries;
+  }
+
+  private static boolean scansClasspath(Set<DominoAuto.Discovery> discovery) {
+    return discovery.contains(DominoAuto.Discovery.CLASSPATH)
+        || discovery.contains(DominoAuto.Discovery.ALL);
+  }
+
+  private static boolean readsSources(Set<DominoAuto.Discovery> discovery) {
+    return discovery.contains(DominoAuto.Discovery.SOURCES)
+        || discovery.contains(DominoAuto.Discovery.ALL);
+  }
+
+  /**
+   * Records the services of the types annotated with {@code @AutoService} in this round by name,
+   * they are filtered by the include/exclude configuration when the loaders are generated.
+   */
+  private void collectAnnotatedServices(RoundEnvironment roundEnv) {
+    TypeElement autoService = elements().getTypeElement(SourceServices.AUTO_SERVICE);
+    if (autoService == null) {
+      return;
+    }
+    long start = System.nanoTime();
+    SourceServices.fromAnnotatedElements(
+            roundEnv.getElementsAnnotatedWith(autoService), elements(), service -> true)
+        .forEach(
+            (service, impls) ->
+                annotatedServices.computeIfAbsent(service, key -> new TreeSet<>()).addAll(impls));
+    metrics.time(ProcessorMetrics.READ, start);
+  }
+
+  private void generateServiceLoaders() throws IOException {
+    if (includes.isEmpty()) {
+      return;
+    }
+    generated = true;
+
+    Set<DominoAuto.Discovery> discovery = discovery();
+    List<Map<String, Set<String>>> found = new ArrayList<>();
+    if (scansClasspath(discovery)) {
+      long scanStart = System.nanoTime();
+      Map<String, Set<String>> scanned = scanServices();
+      note(
+          Verbosity.VERBOSE,
+          "domino-auto scanned classpath in "
+              + elapsedMillis(scanStart)
+              + " ms, found "
+              + scanned.size()
+              + " matching services");
+      found.add(scanned);
+    }
+    if (readsSources(discovery)) {
+      long readStart = System.nanoTime();
+      Map<String, Set<String>> declared = sourceServices();
+      note(
+          Verbosity.VERBOSE,
+          "domino-auto read the current compilation in "
+              + elapsedMillis(readStart)
+              + " ms, found "
+              + declared.size()
+              + " matching services");
+      found.add(declared);
+    }
+    reportInvalidEntries();
+    writeServiceLoaders(ServiceScanner.merge(found));
+  }
+
+  /** Warns once about each malformed services file entry read so far. */
+  private void reportInvalidEntries() {
+    List<String> entries;
+    synchronized (invalidEntries) {
+      entries = new ArrayList<>(invalidEntries);
+    }
+    entries.stream()
+        .filter(reportedInvalidEntries::add)
+        .forEach(entry -> messager().printMessage(Diagnostic.Kind.WARNING, entry));
+  }
+
+  /**
+   * Reads the services declared by the current compilation, the {@code META-INF/services} files of
+   * the class output and source path directories and the {@code @AutoService} types.
+   */
+  private Map<String, Set<String>> sourceServices() throws IOException {
+    long start = System.nanoTime();
+    PackageMatcher matcher = PackageMatcher.compile(includes, exclude);
+    List<Map<String, Set<String>>> found = new ArrayList<>();
+    found.add(
+        SourceServices.fromDirectories(
+            compilationDirectories(), matcher::matches, invalidEntries::add));
+    Map<String, Set<String>> annotated = new HashMap<>();
+    annotatedServices.forEach(
+        (service, impls) -> {
+          if (matcher.matches(service)) {
+            annotated.put(service, impls);
           }
         });
+    found.add(annotated);
+    metrics.time(ProcessorMetrics.READ, start);
+    return ServiceScanner.merge(found);
   }
 
-  private String getPackageName(String qualifiedName) {
-    int lastDotIndex = qualifiedName.lastIndexOf('.');
-    // Check for default package or no dot present
-    if (lastDotIndex == -1) {
-      return "";
+  private Map<String, Set<String>> scanServices() throws IOException {
+    ServiceScanner scanner = newServiceScanner();
+    Optional<Path> cacheFile = scanCacheFile();
+    if (!cacheFile.isPresent()) {
+      if (!isEnabled(DOMINO_AUTO_SHARED_SCAN_CACHE)) {
+        return ServiceScanner.merge(scanner.scan().values());
+      }
+      return ServiceScanner.merge(scan(scanner, scanner.classpathElements()).values());
+    }
+
+    String configSignature = ScanCache.configSignature(includes, exclude);
+    ScanCache cache =
+        isEnabled(DOMINO_AUTO_FORCE_RESCAN)
+            ? ScanCache.empty(cacheFile.get(), configSignature)
+            : ScanCache.load(cacheFile.get(), configSignature);
+
+    List<Map<String, Set<String>>> found = new ArrayList<>();
+    Map<String, String> fingerprints = new HashMap<>();
+    List<File> changed = new ArrayList<>();
+    for (File element : scanner.classpathElements()) {
+      String path = ServiceScanner.pathOf(element);
+      String fingerprint = ScanCache.fingerprint(element);
+      fingerprints.put(path, fingerprint);
+      Optional<Map<String, Set<String>>> cached = cache.get(path, fingerprint);
+      if (cached.isPresent()) {
+        found.add(cached.get());
+      } else {
+        changed.add(element);
+      }
+    }
+
+    Map<String, Map<String, Set<String>>> scanned = scan(scanner, changed);
+    changed.stream()
+        .map(ServiceScanner::pathOf)
+        .forEach(
+            path -> {
+              Map<String, Set<String>> services = scanned.getOrDefault(path, new HashMap<>());
+              cache.put(path, fingerprints.get(path), services);
+              found.add(services);
+            });
+
+    cache.retain(fingerprints.keySet());
+    try {
+      cache.save();
+    } catch (IOException e) {
+      messager()
+          .printMessage(
+              Diagnostic.Kind.WARNING,
+              "Failed to write domino-auto scan cache : " + e.getMessage());
+    }
+    metrics.count(ProcessorMetrics.SCAN_CACHE_HITS, cache.hits());
+    metrics.count(ProcessorMetrics.SCAN_CACHE_MISSES, cache.misses());
+    note(
+        Verbosity.VERBOSE,
+        "domino-auto scan cache : "
+            + cache.hits()
+            + " hits, "
+            + cache.misses()
+            + " misses"
+            + (isEnabled(DOMINO_AUTO_FORCE_RESCAN) ? " (forced full rescan)" : ""));
+    return ServiceScanner.merge(found);
+  }
+
+  /**
+   * Scans classpath elements, through the {@link SharedScanCache} when {@link
+   * #DOMINO_AUTO_SHARED_SCAN_CACHE} is enabled.
+   */
+  private Map<String, Map<String, Set<String>>> scan(ServiceScanner scanner, List<File> elements)
+      throws IOException {
+    if (!isEnabled(DOMINO_AUTO_SHARED_SCAN_CACHE)) {
+      return scanner.scan(elements);
+    }
+    SharedScanCache cache =
+        SharedScanCache.shared(
+            intValue(DOMINO_AUTO_SHARED_SCAN_CACHE_SIZE, DEFAULT_SHARED_SCAN_CACHE_SIZE));
+    // the shared entries are unfiltered, other compilations may include other services, so the
+    // services files are counted here once filtered, cached elements included
+    Map<String, Map<String, Set<String>>> scanned =
+        cache.scan(elements, newServiceScanner(null)::scan);
+    metrics.count(ProcessorMetrics.SHARED_CACHE_HITS, cache.hits());
+    metrics.count(ProcessorMetrics.SHARED_CACHE_MISSES, cache.misses());
+
+    long start = System.nanoTime();
+    PackageMatcher matcher = PackageMatcher.compile(includes, exclude);
+    Map<String, Map<String, Set<String>>> filtered = new HashMap<>();
+    scanned.forEach(
+        (path, services) -> {
+          Map<String, Set<String>> accepted = new HashMap<>();
+          services.forEach(
+              (service, impls) -> {
+                if (matcher.matches(service)) {
+                  accepted.put(service, impls);
+                }
+              });
+          filtered.put(path, accepted);
+          metrics.count(ProcessorMetrics.RESOURCES_SCANNED, services.size());
+          metrics.count(ProcessorMetrics.RESOURCES_ACCEPTED, accepted.size());
+          metrics.count(ProcessorMetrics.RESOURCES_REJECTED, services.size() - accepted.size());
+        });
+    metrics.time(ProcessorMetrics.FILTER, start);
+    return filtered;
+  }
+
+  private ServiceScanner newServiceScanner() {
+    return newServiceScanner(PackageMatcher.compile(includes, exclude)::matches);
+  }
+
+  /** @param serviceFilter the services to collect, {@code null} for the unfiltered shared scans */
+  private ServiceScanner newServiceScanner(Predicate<String> serviceFilter) {
+    return new ServiceScanner(
+        serviceFilter,
+        scanClasspath().orElse(null),
+        scanThreads(),
+        resolveConfiguredPackages(DOMINO_AUTO_ACCEPT_JARS),
+        resolveConfiguredPackages(DOMINO_AUTO_REJECT_JARS),
+        metrics,
+        invalidEntries::add);
+  }
+
+  /**
+   * Resolves the classpath to scan, an explicit {@link #DOMINO_AUTO_CLASSPATH} wins over the javac
+   * compile classpath requested by {@link #DOMINO_AUTO_SCAN_COMPILE_CLASSPATH}, when neither is
+   * available the classpath of the processor class loader is scanned.
+   */
+  private Optional<List<File>> scanClasspath() {
+    String configuredClasspath = resolveConfiguredValue(DOMINO_AUTO_CLASSPATH);
+    if (configuredClasspath != null) {
+      return Optional.of(CompileClasspath.parse(configuredClasspath));
+    }
+    if (!isEnabled(DOMINO_AUTO_SCAN_COMPILE_CLASSPATH)) {
+      return Optional.empty();
+    }
+    Optional<List<File>> compileClasspath =
+        CompileClasspath.fromJavac(env).filter(elements -> !elements.isEmpty());
+    if (!compileClasspath.isPresent()) {
+      messager()
+          .printMessage(
+              Diagnostic.Kind.WARNING,
+              "Could not read the javac compile classpath, scanning the processor classpath instead."
+                  + " Pass the classpath explicitly using "
+                  + DOMINO_AUTO_CLASSPATH
+                  + JAVAC_INTERNALS_HINT);
+    }
+    return compileClasspath;
+  }
+
+  private int scanThreads() {
+    return intValue(DOMINO_AUTO_SCAN_THREADS, 0);
+  }
+
+  private int intValue(String optionName, int defaultValue) {
+    String value = resolveConfiguredValue(optionName);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      messager()
+          .printMessage(
+              Diagnostic.Kind.WARNING,
+              "Invalid " + optionName + " value [" + value + "], using default.");
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Resolves the scan cache file, either from the {@link #DOMINO_AUTO_SCAN_CACHE_FILE} option or
+   * next to the class output directory when {@link #DOMINO_AUTO_SCAN_CACHE} is enabled.
+   */
+  private Optional<Path> scanCacheFile() {
+    String configuredFile = resolveConfiguredValue(DOMINO_AUTO_SCAN_CACHE_FILE);
+    if (configuredFile != null) {
+      return Optional.of(Paths.get(configuredFile));
+    }
+    if (!isEnabled(DOMINO_AUTO_SCAN_CACHE)) {
+      return Optional.empty();
+    }
+    Optional<Path> classOutput = classOutputDirectory();
+    if (!classOutput.isPresent()) {
+      messager()
+          .printMessage(
+              Diagnostic.Kind.WARNING,
+              "Could not locate the class output directory, domino-auto scan cache is disabled.");
+      return Optional.empty();
     }
-    return qualifiedName.substring(0, lastDotIndex);
+    Path buildDir =
+        nonNull(classOutput.get().getParent()) ? classOutput.get().getParent() : classOutput.get();
+    return Optional.of(buildDir.resolve(DEFAULT_SCAN_CACHE_FILE));
   }
 
-  private String getClassName(String qualifiedName) {
-    int lastDotIndex = qualifiedName.lastIndexOf('.');
-    // Check if no dot is present, meaning the entire string is the class name
-    if (lastDotIndex == -1) {
-      return qualifiedName;
+  /** The class output and source path directories of the current compilation. */
+  private List<File> compilationDirectories() {
+    List<File> directories = new ArrayList<>();
+    classOutputDirectory().map(Path::toFile).ifPresent(directories::add);
+    Optional<List<File>> sourcePath = CompileClasspath.fromJavac(env, StandardLocation.SOURCE_PATH);
+    if (sourcePath.isPresent()) {
+      directories.addAll(sourcePath.get());
+    } else if (!warnedSourcePath) {
+      warnedSourcePath = true;
+      messager()
+          .printMessage(
+              Diagnostic.Kind.WARNING,
+              "Could not read the javac source path, services files of the source directories are"
+                  + " not discovered, only the class output is searched."
+                  + JAVAC_INTERNALS_HINT);
     }
-    return qualifiedName.substring(lastDotIndex + 1);
+    return directories;
+  }
+
+  /**
+   * Writes the {@link ServiceIndex} of the services this compilation provides, whether or not they
+   * are included in the generated loaders, downstream compilations filter them.
+   */
+  private void writeIndex() {
+    long start = System.nanoTime();
+    try {
+      List<Map<String, Set<String>>> provided = new ArrayList<>();
+      provided.add(
+          SourceServices.fromDirectories(
+              compilationDirectories(), service -> true, invalidEntries::add));
+      reportInvalidEntries();
+      provided.add(annotatedServices);
+      Map<String, Set<String>> services = ServiceScanner.merge(provided);
+      FileObject index =
+          getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ServiceIndex.INDEX_PATH);
+      try (Writer writer = index.openWriter()) {
+        writer.write(ServiceIndex.write(services));
+      }
+      note(
+          Verbosity.VERBOSE,
+          "domino-auto wrote the index of "
+              + services.size()
+              + " services provided by this module");
+    } catch (IOException e) {
+      messager()
+          .printMessage(
+              Diagnostic.Kind.WARNING, "Failed to write domino-auto index : " + e.getMessage());
+    }
+    metrics.time(ProcessorMetrics.WRITE, start);
+  }
+
+  private Optional<Path> classOutputDirectory() {
+    try {
+      return Optional.ofNullable(
+          Paths.get(
+                  getFiler()
+                      .getResource(StandardLocation.CLASS_OUTPUT, "", DEFAULT_SCAN_CACHE_FILE)
+                      .toUri())
+              .getParent());
+    } catch (Exception e) {
+      return Optional.empty();
+    }
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  private void writeServiceLoaders(Map<String, Set<String>> services) {
+    GeneratorOptions options = generatorOptions();
+    ServiceLoaderGenerator generator = new ServiceLoaderGenerator(originatingElements(), options);
+    ServiceResolver resolver =
+        new ServiceResolver(
+            this,
+            sourceUtil,
+            validationKind(),
+            isEnabled(DOMINO_AUTO_PRUNE_INVALID),
+            this::resolveConfiguredValue);
+    Optional<ClassName> registryType = registryType();
+    Optional<ClassName> servicesType = servicesType();
+
+    // the compiler model is resolved on this thread, the generators only use JavaPoet and can run
+    // in parallel
+    List<Supplier<List<GeneratedSource>>> generators = new ArrayList<>();
+    List<ServiceDefinition> loaderServices = new ArrayList<>();
+    Map<String, ServiceImplementation> singletons = new TreeMap<>();
+    List<ServiceDefinition> registryServices = new ArrayList<>();
+    for (Map.Entry<String, Set<String>> entry : new TreeMap<>(services).entrySet()) {
+      Set<String> impls = new TreeSet<>(entry.getValue());
+      if (verbosity == Verbosity.VERBOSE) {
+        impls.forEach(
+            impl ->
+                note(
+                    Verbosity.VERBOSE, "Adding service entry : " + entry.getKey() + " -> " + impl));
+      }
+
+      long resolveStart = System.nanoTime();
+      Optional<ServiceDefinition> service = resolver.resolve(entry.getKey(), impls);
+      metrics.time(ProcessorMetrics.RESOLVE, resolveStart);
+      if (!service.isPresent()) {
+        continue;
+      }
+      metrics.count(ProcessorMetrics.SERVICES, 1);
+      metrics.count(ProcessorMetrics.IMPLEMENTATIONS, service.get().implementations().size());
+      ServiceDefinition definition = service.get();
+      ClassName ownerType;
+      // async loaders keep their own class, it is the split point of their implementations
+      if (registryType.isPresent() && !options.isAsync(definition.name())) {
+        registryServices.add(definition);
+        ownerType = registryType.get();
+      } else {
+        loaderServices.add(definition);
+        generators.add(() -> List.of(generator.generate(definition)));
+        ownerType = ServiceLoaderGenerator.loaderType(definition.type());
+      }
+      definition.implementations().stream()
+          .filter(ServiceImplementation::isSingleton)
+          .forEach(
+              impl -> {
+                generator.placeSingleton(impl, ownerType);
+                singletons.putIfAbsent(impl.name(), impl);
+              });
+    }
+    boolean delegates = isEnabled(DOMINO_AUTO_REGISTRY_DELEGATES);
+    if (registryType.isPresent() && !registryServices.isEmpty()) {
+      generators.add(
+          () -> generator.generateRegistry(registryType.get(), registryServices, delegates));
+    }
+    singletons
+        .values()
+        .forEach(impl -> generators.add(() -> List.of(generator.generateSingleton(impl))));
+    if (servicesType.isPresent()) {
+      boolean fallback = isEnabled(DOMINO_AUTO_SERVICES_FALLBACK);
+      generators.add(
+          () ->
+              List.of(
+                  generator.generateServices(
+                      servicesType.get(),
+                      loaderServices,
+                      registryType.filter(type -> !registryServices.isEmpty()),
+                      registryServices,
+                      fallback)));
+    }
+
+    long generateStart = System.nanoTime();
+    List<GeneratedSource> sources = new SourceRenderer(parallelism()).render(generators);
+    metrics.time(ProcessorMetrics.GENERATE, generateStart);
+    writeSources(sources);
+  }
+
+  /**
+   * The number of threads generating and rendering the loaders, from {@link
+   * #DOMINO_AUTO_PARALLELISM} or the available processors, {@code 1} generates them sequentially.
+   */
+  private int parallelism() {
+    int parallelism = intValue(DOMINO_AUTO_PARALLELISM, Runtime.getRuntime().availableProcessors());
+    return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+  }
+
+  /** Writes the rendered sources one at a time, the Filer is not thread safe. */
+  private void writeSources(List<GeneratedSource> sources) {
+    boolean skipUnchanged =
+        !"false".equalsIgnoreCase(resolveConfiguredValue(DOMINO_AUTO_SKIP_UNCHANGED));
+    long start = System.nanoTime();
+    int unchanged = 0;
+    for (GeneratedSource source : sources) {
+      String qualifiedName = source.qualifiedName();
+      if (!writtenLoaders.add(qualifiedName)) {
+        note(
+            Verbosity.SUMMARY,
+            "domino-auto configuration changed after "
+                + qualifiedName
+                + " was written in an earlier round, it is not regenerated");
+        continue;
+      }
+      try {
+        if (skipUnchanged && isUpToDate(source)) {
+          unchanged++;
+          metrics.count(ProcessorMetrics.LOADERS_UNCHANGED, 1);
+        } else {
+          write(source);
+          metrics.count(ProcessorMetrics.LOADERS_WRITTEN, 1);
+        }
+      } catch (Exception e) {
+        messager()
+            .printMessage(
+                Diagnostic.Kind.WARNING, "Failed to write service loader : " + e.getMessage());
+      }
+    }
+    metrics.time(ProcessorMetrics.WRITE, start);
+    if (unchanged > 0) {
+      note(Verbosity.VERBOSE, "domino-auto skipped " + unchanged + " unchanged service loaders");
+    }
+  }
+
+  private void write(GeneratedSource source) throws IOException {
+    JavaFileObject file =
+        getFiler()
+            .createSourceFile(
+                source.qualifiedName(), source.originatingElements().toArray(new Element[0]));
+    try (Writer writer = file.openWriter()) {
+      writer.write(source.content());
+    } catch (IOException | RuntimeException e) {
+      try {
+        file.delete();
+      } catch (Exception ignored) {
+        // the partial file is left behind, the compilation reports the failure anyway
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Resolves the registry class when the registry mode is enabled, named by {@link
+   * #DOMINO_AUTO_REGISTRY_NAME} or placed in the package of the first {@link DominoAuto} element,
+   * or of the first include, when no name is configured.
+   */
+  private Optional<ClassName> registryType() {
+    return generatedType(
+        DOMINO_AUTO_REGISTRY, DOMINO_AUTO_REGISTRY_NAME, DEFAULT_REGISTRY_NAME, "registry");
+  }
+
+  /**
+   * Resolves the {@code load(Class)} facade class when {@link #DOMINO_AUTO_SERVICES} is enabled,
+   * placed like the registry.
+   */
+  private Optional<ClassName> servicesType() {
+    return generatedType(
+        DOMINO_AUTO_SERVICES, DOMINO_AUTO_SERVICES_NAME, DEFAULT_SERVICES_NAME, "services facade");
+  }
+
+  private Optional<ClassName> generatedType(
+      String enabledOption, String nameOption, String defaultName, String description) {
+    String name = resolveConfiguredValue(nameOption);
+    if (name != null) {
+      try {
+        return Optional.of(ClassName.bestGuess(name));
+      } catch (IllegalArgumentException e) {
+        messager()
+            .printMessage(Diagnostic.Kind.ERROR, "Invalid " + nameOption + " value [" + name + "]");
+        return Optional.empty();
+      }
+    }
+    if (!isEnabled(enabledOption)) {
+      return Optional.empty();
+    }
+    Optional<String> defaultPackage = defaultRegistryPackage();
+    if (!defaultPackage.isPresent()) {
+      messager()
+          .printMessage(
+              Diagnostic.Kind.ERROR,
+              "Cannot choose a package for the domino-auto " + description + ", set " + nameOption);
+      return Optional.empty();
+    }
+    return Optional.of(ClassName.get(defaultPackage.get(), defaultName));
+  }
+
+  private Optional<String> defaultRegistryPackage() {
+    List<Element> elements = originatingElements();
+    if (!elements.isEmpty()) {
+      return Optional.of(elements().getPackageOf(elements.get(0)).getQualifiedName().toString())
+          .filter(name -> !name.isEmpty());
+    }
+    return includes.stream()
+        .sorted()
+        .map(
+            include ->
+                Arrays.stream(include.split("\\."))
+                    .filter(segment -> !segment.isEmpty())
+                    .takeWhile(segment -> !segment.contains("*"))
+                    .collect(Collectors.joining(".")))
+        .filter(name -> !name.isEmpty())
+        .findFirst();
+  }
+
+  private GeneratorOptions generatorOptions() {
+    PackageMatcher asyncMatcher = PackageMatcher.compile(async, new HashSet<>());
+    PackageMatcher initAllMatcher = PackageMatcher.compile(initAll, new HashSet<>());
+    return GeneratorOptions.defaults()
+        .asyncServices(asyncMatcher::matches)
+        .initAllServices(initAllMatcher::matches)
+        .splitPoints(
+            enumValue(
+                DOMINO_AUTO_ASYNC_SPLIT_POINTS,
+                GeneratorOptions.SplitPoints.class,
+                GeneratorOptions.SplitPoints.HOOK))
+        .asyncSplit(
+            enumValue(
+                DOMINO_AUTO_ASYNC_SPLIT,
+                GeneratorOptions.AsyncSplit.class,
+                GeneratorOptions.AsyncSplit.SERVICE))
+        .timing(isEnabled(DOMINO_AUTO_TIMING));
+  }
+
+  private <E extends Enum<E>> E enumValue(String optionName, Class<E> type, E defaultValue) {
+    String value = resolveConfiguredValue(optionName);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Enum.valueOf(type, value.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      messager()
+          .printMessage(
+              Diagnostic.Kind.WARNING,
+              "Invalid "
+                  + optionName
+                  + " value ["
+                  + value
+                  + "], using "
+                  + defaultValue.name().toLowerCase()
+                  + ".");
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Resolves the {@link Diagnostic.Kind} used to report invalid implementations from {@link
+   * #DOMINO_AUTO_VALIDATION}, {@code null} when the validation is disabled.
+   */
+  private Diagnostic.Kind validationKind() {
+    String validation = resolveConfiguredValue(DOMINO_AUTO_VALIDATION);
+    if (validation == null || "warning".equalsIgnoreCase(validation)) {
+      return Diagnostic.Kind.WARNING;
+    }
+    if ("error".equalsIgnoreCase(validation)) {
+      return Diagnostic.Kind.ERROR;
+    }
+    if ("none".equalsIgnoreCase(validation)) {
+      return null;
+    }
+    messager()
+        .printMessage(
+            Diagnostic.Kind.WARNING,
+            "Invalid " + DOMINO_AUTO_VALIDATION + " value [" + validation + "], using warning.");
+    return Diagnostic.Kind.WARNING;
+  }
+
+  /**
+   * A loader is up to date when a previous compilation left both its source, stamped with the same
+   * inputs hash, and its compiled class in the output directories. Skipping the write keeps their
+   * timestamps, and so the caches of downstream tools, intact.
+   */
+  private boolean isUpToDate(GeneratedSource loader) {
+    Optional<String> inputsHash = loader.inputsHash();
+    if (!inputsHash.isPresent()) {
+      return false;
+    }
+    try {
+      FileObject classFile =
+          getFiler()
+              .getResource(
+                  StandardLocation.CLASS_OUTPUT,
+                  loader.packageName(),
+                  loader.simpleName() + ".class");
+      try (InputStream ignored = classFile.openInputStream()) {
+        // the class file exists
+      }
+      FileObject sourceFile =
+          getFiler()
+              .getResource(
+                  StandardLocation.SOURCE_OUTPUT,
+                  loader.packageName(),
+                  loader.simpleName() + ".java");
+      try (BufferedReader reader = new BufferedReader(sourceFile.openReader(true))) {
+        StringBuilder header = new StringBuilder();
+        String line;
+        for (int i = 0; i < 3 && (line = reader.readLine()) != null; i++) {
+          header.append(line).append('\n');
+        }
+        return inputsHash.equals(ServiceLoaderGenerator.inputsHashOf(header.toString()));
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Resolves the {@link DominoAuto} elements collected across rounds, they are recorded by name
+   * since elements must not be reused between rounds.
+   */
+  private List<Element> originatingElements() {
+    List<Element> elements = new ArrayList<>();
+    originatingPackages.stream()
+        .sorted()
+        .map(name -> elements().getPackageElement(name))
+        .filter(Objects::nonNull)
+        .forEach(elements::add);
+    originatingTypes.stream()
+        .sorted()
+        .map(name -> elements().getTypeElement(name))
+        .filter(Objects::nonNull)
+        .forEach(elements::add);
+    return elements;
   }
 
   @Override
@@ -215,6 +1034,22 @@ public class DominoAutoProcessor extends AbstractProcessor implements HasProcess
     return resolveConfiguredPackages(optionName, System::getProperty, System::getenv, options());
   }
 
+  String resolveConfiguredValue(String optionName) {
+    return resolveConfiguredValue(optionName, System::getProperty, System::getenv, options());
+  }
+
+  boolean isEnabled(String optionName) {
+    return Boolean.parseBoolean(resolveConfiguredValue(optionName));
+  }
+
+  static String resolveConfiguredValue(
+      String optionName,
+      Function<String, String> systemProperties,
+      Function<String, String> environmentVariables,
+      Map<String, String> processorOptions) {
+    return firstNonBlankValue(optionName, systemProperties, environmentVariables, processorOptions);
+  }
+
   static Set<String> resolveConfiguredPackages(
       String optionName,
       Function<String, String> systemProperties,
@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.util.List;
+import java.util.Optional;
+import javax.lang.model.element.Element;
+
+/**
+ * A generated file rendered to its source text, ready to be written through the Filer. Rendering
+ * does not touch the compiler and can run on any thread.
+ */
+class GeneratedSource {
+
+  private final String packageName;
+  private final String simpleName;
+  private final String content;
+  private final List<Element> originatingElements;
+
+  GeneratedSource(
+      String packageName, String simpleName, String content, List<Element> originatingElements) {
+    this.packageName = packageName;
+    this.simpleName = simpleName;
+    this.content = content;
+    this.originatingElements = originatingElements;
+  }
+
+  String packageName() {
+    return packageName;
+  }
+
+  String simpleName() {
+    return simpleName;
+  }
+
+  String qualifiedName() {
+    return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+  }
+
+  String content() {
+    return content;
+  }
+
+  List<Element> originatingElements() {
+    return originatingElements;
+  }
+
+  /** @return the inputs hash stamped in the header of the source. */
+  Optional<String> inputsHash() {
+    return ServiceLoaderGenerator.inputsHashOf(content);
+  }
+
+  @Override
+  public String toString() {
+    return content;
+  }
+}
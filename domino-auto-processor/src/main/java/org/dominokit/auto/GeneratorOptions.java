@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.util.function.Predicate;
+
+/** The generation options shared by all the loaders generated in a compilation. */
+class GeneratorOptions {
+
+  /** How the split points of the generated {@code loadAsync} methods are emitted. */
+  enum SplitPoints {
+    /** Calls {@link DominoAutoAsync#runAsync}, the split point is supplied by a runtime hook. */
+    HOOK,
+    /** Calls GWT2 {@code GWT.runAsync}, the GWT compiler creates a fragment per split point. */
+    GWT2
+  }
+
+  /** How the implementations of an async service are grouped behind split points. */
+  enum AsyncSplit {
+    /** One split point per service, all its implementations load together. */
+    SERVICE,
+    /** One split point per implementation. */
+    IMPLEMENTATION
+  }
+
+  private Predicate<String> asyncServices = service -> false;
+  private Predicate<String> initAllServices = service -> false;
+  private SplitPoints splitPoints = SplitPoints.HOOK;
+  private AsyncSplit asyncSplit = AsyncSplit.SERVICE;
+  private boolean timing;
+
+  static GeneratorOptions defaults() {
+    return new GeneratorOptions();
+  }
+
+  /** @param asyncServices selects, by name, the services whose loaders get a {@code loadAsync}. */
+  GeneratorOptions asyncServices(Predicate<String> asyncServices) {
+    this.asyncServices = asyncServices;
+    return this;
+  }
+
+  /**
+   * @param initAllServices selects, by name, the services whose loaders get an {@code initAll},
+   *     these loaders use {@code java.util.concurrent} and only compile for the JVM
+   */
+  GeneratorOptions initAllServices(Predicate<String> initAllServices) {
+    this.initAllServices = initAllServices;
+    return this;
+  }
+
+  GeneratorOptions splitPoints(SplitPoints splitPoints) {
+    this.splitPoints = splitPoints;
+    return this;
+  }
+
+  GeneratorOptions asyncSplit(AsyncSplit asyncSplit) {
+    this.asyncSplit = asyncSplit;
+    return this;
+  }
+
+  /** @param timing wraps each instantiation in {@link DominoAutoTiming#time}. */
+  GeneratorOptions timing(boolean timing) {
+    this.timing = timing;
+    return this;
+  }
+
+  boolean isAsync(String service) {
+    return asyncServices.test(service);
+  }
+
+  boolean isInitAll(String service) {
+    return initAllServices.test(service);
+  }
+
+  SplitPoints splitPoints() {
+    return splitPoints;
+  }
+
+  AsyncSplit asyncSplit() {
+    return asyncSplit;
+  }
+
+  boolean timing() {
+    return timing;
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Matches service names against the include and exclude packages, compiled into a trie of package
+ * segments.
+ *
+ * <p>A pattern matches a name when its segments are a prefix of the name segments, so {@code
+ * com.example.svc} matches {@code com.example.svc.Service} but not {@code
+ * com.example.svcinternal.Service}. A {@code *} segment matches exactly one segment and a {@code
+ * **} segment matches any number of segments, including none.
+ *
+ * <p>When several patterns match a name, the one that matches the most segments decides, an exclude
+ * wins over an include matching the same number of segments. Without wildcards a lookup walks the
+ * name segments once.
+ */
+class PackageMatcher {
+
+  private static final String ANY_SEGMENT = "*";
+  private static final String ANY_SEGMENTS = "**";
+
+  private final Node root = new Node();
+
+  private PackageMatcher() {}
+
+  static PackageMatcher compile(Collection<String> includes, Collection<String> excludes) {
+    PackageMatcher matcher = new PackageMatcher();
+    includes.forEach(pattern -> matcher.add(pattern, Verdict.INCLUDE));
+    excludes.forEach(pattern -> matcher.add(pattern, Verdict.EXCLUDE));
+    return matcher;
+  }
+
+  private void add(String pattern, Verdict verdict) {
+    String trimmed = pattern.trim();
+    if (trimmed.isEmpty()) {
+      return;
+    }
+    Node node = root;
+    for (String segment : trimmed.split("\\.")) {
+      if (ANY_SEGMENTS.equals(segment)) {
+        node = node.anySegments == null ? (node.anySegments = new Node()) : node.anySegments;
+      } else if (ANY_SEGMENT.equals(segment)) {
+        node = node.anySegment == null ? (node.anySegment = new Node()) : node.anySegment;
+      } else {
+        node = node.children.computeIfAbsent(segment, key -> new Node());
+      }
+    }
+    if (node.verdict != Verdict.EXCLUDE) {
+      node.verdict = verdict;
+    }
+  }
+
+  boolean matches(String name) {
+    Match match = new Match();
+    visit(root, name.split("\\."), 0, match);
+    return match.verdict == Verdict.INCLUDE;
+  }
+
+  private static void visit(Node node, String[] segments, int index, Match match) {
+    if (node.verdict != null) {
+      match.offer(index, node.verdict);
+    }
+    if (node.anySegments != null) {
+      for (int next = index; next <= segments.length; next++) {
+        visit(node.anySegments, segments, next, match);
+      }
+    }
+    if (index == segments.length) {
+      return;
+    }
+    if (node.anySegment != null) {
+      visit(node.anySegment, segments, index + 1, match);
+    }
+    Node child = node.children.get(segments[index]);
+    if (child != null) {
+      visit(child, segments, index + 1, match);
+    }
+  }
+
+  private enum Verdict {
+    INCLUDE,
+    EXCLUDE
+  }
+
+  private static class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    private Node anySegment;
+    private Node anySegments;
+    private Verdict verdict;
+  }
+
+  private static class Match {
+    private int depth = -1;
+    private Verdict verdict;
+
+    private void offer(int depth, Verdict verdict) {
+      if (depth > this.depth || (depth == this.depth && verdict == Verdict.EXCLUDE)) {
+        this.depth = depth;
+        this.verdict = verdict;
+      }
+    }
+  }
+}
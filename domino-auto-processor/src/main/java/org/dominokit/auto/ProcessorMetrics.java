@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulates the time spent in each processor phase and the counters of a compilation, rendered as
+ * a one-line summary or as a JSON report.
+ */
+class ProcessorMetrics {
+
+  static final String CONFIGURATION = "configuration";
+  static final String SCAN = "scan";
+  static final String FILTER = "filter";
+  static final String READ = "read";
+  static final String RESOLVE = "resolve";
+  static final String GENERATE = "generate";
+  static final String WRITE = "write";
+
+  static final String ROUNDS = "rounds";
+  static final String ELEMENTS_SCANNED = "classpathElementsScanned";
+  static final String RESOURCES_SCANNED = "resourcesScanned";
+  static final String RESOURCES_ACCEPTED = "resourcesAccepted";
+  static final String RESOURCES_REJECTED = "resourcesRejected";
+  static final String INDEXES_READ = "indexesRead";
+  static final String SCAN_CACHE_HITS = "scanCacheHits";
+  static final String SCAN_CACHE_MISSES = "scanCacheMisses";
+  static final String SHARED_CACHE_HITS = "sharedScanCacheHits";
+  static final String SHARED_CACHE_MISSES = "sharedScanCacheMisses";
+  static final String SERVICES = "services";
+  static final String IMPLEMENTATIONS = "implementations";
+  static final String LOADERS_WRITTEN = "loadersWritten";
+  static final String LOADERS_UNCHANGED = "loadersUnchanged";
+
+  static final int REPORT_VERSION = 1;
+
+  private final Map<String, Long> phases = new LinkedHashMap<>();
+  private final Map<String, Long> counters = new LinkedHashMap<>();
+
+  ProcessorMetrics() {
+    for (String phase :
+        new String[] {CONFIGURATION, SCAN, FILTER, READ, RESOLVE, GENERATE, WRITE}) {
+      phases.put(phase, 0L);
+    }
+  }
+
+  /** Adds the time elapsed since {@code startNanos} to a phase. */
+  synchronized void time(String phase, long startNanos) {
+    phases.merge(phase, System.nanoTime() - startNanos, Long::sum);
+  }
+
+  synchronized void count(String counter, long delta) {
+    counters.merge(counter, delta, Long::sum);
+  }
+
+  synchronized long counter(String counter) {
+    return counters.getOrDefault(counter, 0L);
+  }
+
+  synchronized long millis(String phase) {
+    return TimeUnit.NANOSECONDS.toMillis(phases.getOrDefault(phase, 0L));
+  }
+
+  synchronized long totalMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(phases.values().stream().mapToLong(Long::longValue).sum());
+  }
+
+  synchronized String summary() {
+    StringBuilder summary =
+        new StringBuilder("domino-auto : ")
+            .append(counter(SERVICES))
+            .append(" services, ")
+            .append(counter(IMPLEMENTATIONS))
+            .append(" implementations, ")
+            .append(counter(LOADERS_WRITTEN))
+            .append(" loaders written, ")
+            .append(counter(LOADERS_UNCHANGED))
+            .append(" unchanged, ")
+            .append(counter(RESOURCES_ACCEPTED))
+            .append('/')
+            .append(counter(RESOURCES_SCANNED))
+            .append(" services files accepted");
+    if (counter(INDEXES_READ) > 0) {
+      summary.append(", ").append(counter(INDEXES_READ)).append(" indexes read");
+    }
+    if (counters.containsKey(SCAN_CACHE_HITS)) {
+      summary
+          .append(", scan cache ")
+          .append(counter(SCAN_CACHE_HITS))
+          .append(" hits ")
+          .append(counter(SCAN_CACHE_MISSES))
+          .append(" misses");
+    }
+    if (counters.containsKey(SHARED_CACHE_HITS)) {
+      summary
+          .append(", shared scan cache ")
+          .append(counter(SHARED_CACHE_HITS))
+          .append(" hits ")
+          .append(counter(SHARED_CACHE_MISSES))
+          .append(" misses");
+    }
+    summary.append(" in ").append(totalMillis()).append(" ms (");
+    String separator = "";
+    for (String phase : phases.keySet()) {
+      summary.append(separator).append(phase).append(' ').append(millis(phase)).append(" ms");
+      separator = ", ";
+    }
+    return summary.append(')').toString();
+  }
+
+  synchronized String toJson() {
+    StringBuilder json = new StringBuilder("{\n");
+    json.append("  \"version\": ").append(REPORT_VERSION).append(",\n");
+    json.append("  \"totalMillis\": ").append(totalMillis()).append(",\n");
+    json.append("  \"phasesMillis\": {");
+    String separator = "\n";
+    for (Map.Entry<String, Long> phase : phases.entrySet()) {
+      json.append(separator)
+          .append("    \"")
+          .append(phase.getKey())
+          .append("\": ")
+          .append(String.format(Locale.ROOT, "%.3f", phase.getValue() / 1_000_000d));
+      separator = ",\n";
+    }
+    json.append("\n  },\n");
+    json.append("  \"counters\": {");
+    separator = "\n";
+    for (Map.Entry<String, Long> counter : counters.entrySet()) {
+      json.append(separator)
+          .append("    \"")
+          .append(counter.getKey())
+          .append("\": ")
+          .append(counter.getValue());
+      separator = ",\n";
+    }
+    return json.append("\n  }\n}\n").toString();
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A persistent cache of the service entries each classpath element contributed in a previous
+ * compilation.
+ *
+ * <p>Entries are keyed by the element path and validated against a fingerprint: size and last
+ * modified time for archives, a hash of the {@code META-INF/services} content for directories. The
+ * whole cache is discarded when the include/exclude configuration that filtered the entries
+ * changes.
+ */
+class ScanCache {
+
+  private static final String HEADER = "domino-auto-scan-cache";
+  // 2: entries with embedded whitespace are skipped instead of joined
+  // 3: directory fingerprints include the service index
+  // 4: indexes missing some of the services files of their element are ignored
+  private static final int VERSION = 4;
+  private static final String ELEMENT = "E";
+  private static final String SERVICE = "S";
+
+  private final Path file;
+  private final String configSignature;
+  private final Map<String, CachedElement> elements = new TreeMap<>();
+  private int hits;
+  private int misses;
+
+  private ScanCache(Path file, String configSignature) {
+    this.file = file;
+    this.configSignature = configSignature;
+  }
+
+  /** Creates an empty cache that will be written to the given file. */
+  static ScanCache empty(Path file, String configSignature) {
+    return new ScanCache(file, configSignature);
+  }
+
+  /**
+   * Reads the cache from the given file, an unreadable, outdated or differently configured cache
+   * file results in an empty cache.
+   */
+  static ScanCache load(Path file, String configSignature) {
+    ScanCache cache = new ScanCache(file, configSignature);
+    if (!Files.isRegularFile(file)) {
+      return cache;
+    }
+
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String header = reader.readLine();
+      if (!(HEADER + "\t" + VERSION + "\t" + configSignature).equals(header)) {
+        return cache;
+      }
+      CachedElement current = null;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split("\t", 3);
+        if (parts.length != 3) {
+          continue;
+        }
+        if (ELEMENT.equals(parts[0])) {
+          current = new CachedElement(parts[1]);
+          cache.elements.put(parts[2], current);
+        } else if (SERVICE.equals(parts[0]) && current != null) {
+          current.services.computeIfAbsent(parts[1], service -> new TreeSet<>()).add(parts[2]);
+        }
+      }
+    } catch (IOException e) {
+      cache.elements.clear();
+    }
+    return cache;
+  }
+
+  /**
+   * @return the cached services of the element if its fingerprint did not change since it was
+   *     cached.
+   */
+  Optional<Map<String, Set<String>>> get(String path, String fingerprint) {
+    CachedElement element = elements.get(path);
+    if (element != null && element.fingerprint.equals(fingerprint)) {
+      hits++;
+      return Optional.of(element.services);
+    }
+    misses++;
+    return Optional.empty();
+  }
+
+  void put(String path, String fingerprint, Map<String, Set<String>> services) {
+    CachedElement element = new CachedElement(fingerprint);
+    services.forEach((service, impls) -> element.services.put(service, new TreeSet<>(impls)));
+    elements.put(path, element);
+  }
+
+  /** Drops the elements that are no longer on the classpath. */
+  void retain(Collection<String> paths) {
+    elements.keySet().retainAll(new HashSet<>(paths));
+  }
+
+  /**
+   * Writes the cache to a temporary file next to it and moves it in place, so that an interrupted
+   * or concurrent build never leaves a truncated or interleaved cache behind.
+   */
+  void save() throws IOException {
+    Path directory = file.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+        writer.write(HEADER + "\t" + VERSION + "\t" + configSignature);
+        writer.newLine();
+        for (Map.Entry<String, CachedElement> entry : elements.entrySet()) {
+          writer.write(ELEMENT + "\t" + entry.getValue().fingerprint + "\t" + entry.getKey());
+          writer.newLine();
+          for (Map.Entry<String, Set<String>> service : entry.getValue().services.entrySet()) {
+            for (String impl : service.getValue()) {
+              writer.write(SERVICE + "\t" + service.getKey() + "\t" + impl);
+              writer.newLine();
+            }
+          }
+        }
+      }
+      try {
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  int hits() {
+    return hits;
+  }
+
+  int misses() {
+    return misses;
+  }
+
+  /**
+   * Builds a signature of the configuration that filtered the cached entries, so that a cache
+   * written with a different configuration is never reused.
+   */
+  static String configSignature(Set<String> includes, Set<String> excludes) {
+    return "+"
+        + includes.stream().sorted().collect(Collectors.joining(","))
+        + " -"
+        + excludes.stream().sorted().collect(Collectors.joining(","));
+  }
+
+  /**
+   * Fingerprints a classpath element, archives are identified by their size and last modified time
+   * while directories are identified by a hash of their {@code META-INF/services} content and of
+   * their {@link ServiceIndex}.
+   */
+  static String fingerprint(File element) throws IOException {
+    if (element.isFile()) {
+      return "jar:" + element.length() + ":" + element.lastModified();
+    }
+
+    List<Path> hashed = new ArrayList<>();
+    Path services = element.toPath().resolve(ServiceScanner.SERVICES_PATH);
+    if (Files.isDirectory(services)) {
+      try (Stream<Path> files = Files.list(services)) {
+        files.filter(Files::isRegularFile).sorted().forEach(hashed::add);
+      }
+    }
+    Path index = element.toPath().resolve(ServiceIndex.INDEX_PATH);
+    if (Files.isRegularFile(index)) {
+      hashed.add(index);
+    }
+    if (hashed.isEmpty()) {
+      return "dir:none";
+    }
+
+    MessageDigest digest = newDigest();
+    for (Path file : hashed) {
+      digest.update(element.toPath().relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      try (InputStream in = Files.newInputStream(file)) {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          digest.update(buffer, 0, read);
+        }
+      }
+      digest.update((byte) 0);
+    }
+    return "dir:" + toHex(digest.digest());
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  private static class CachedElement {
+    private final String fingerprint;
+    private final Map<String, Set<String>> services = new TreeMap<>();
+
+    private CachedElement(String fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+  }
+}
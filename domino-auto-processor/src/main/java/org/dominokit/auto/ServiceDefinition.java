@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import com.squareup.javapoet.ClassName;
+import java.util.List;
+
+/** A service and the implementations its generated loader creates, in generation order. */
+class ServiceDefinition {
+
+  private final String name;
+  private final ClassName type;
+  private final List<ServiceImplementation> implementations;
+
+  /**
+   * @param name the service name as found in {@code META-INF/services}
+   * @param type the service type
+   * @param implementations the implementations in generation order
+   */
+  ServiceDefinition(String name, ClassName type, List<ServiceImplementation> implementations) {
+    this.name = name;
+    this.type = type;
+    this.implementations = implementations;
+  }
+
+  String name() {
+    return name;
+  }
+
+  ClassName type() {
+    return type;
+  }
+
+  List<ServiceImplementation> implementations() {
+    return implementations;
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * A streaming parser for {@code META-INF/services} files.
+ *
+ * <p>The content is decoded as UTF-8 while being read, only the implementation names are
+ * materialized as strings. Blank lines, {@code #} comments, trailing comments and the whitespace
+ * around each name are ignored as specified by {@link java.util.ServiceLoader}. Names containing
+ * whitespace, which {@code ServiceLoader} rejects, are reported as invalid instead.
+ */
+class ServiceFileParser {
+
+  private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+  private ServiceFileParser() {}
+
+  /**
+   * @param implConsumer receives the implementation names
+   * @param invalidConsumer receives the entries that are not valid names, without their comment
+   */
+  static void parse(
+      InputStream content, Consumer<String> implConsumer, Consumer<String> invalidConsumer)
+      throws IOException {
+    Reader reader = new InputStreamReader(content, StandardCharsets.UTF_8);
+    char[] buffer = new char[1024];
+    StringBuilder name = new StringBuilder(64);
+    boolean comment = false;
+    int read;
+    while ((read = reader.read(buffer)) != -1) {
+      for (int i = 0; i < read; i++) {
+        char c = buffer[i];
+        if (c == '\n' || c == '\r') {
+          emit(name, implConsumer, invalidConsumer);
+          comment = false;
+        } else if (!comment) {
+          if (c == '#') {
+            comment = true;
+          } else if (c != BYTE_ORDER_MARK) {
+            name.append(c);
+          }
+        }
+      }
+    }
+    emit(name, implConsumer, invalidConsumer);
+  }
+
+  private static void emit(
+      StringBuilder name, Consumer<String> implConsumer, Consumer<String> invalidConsumer) {
+    int start = 0;
+    int end = name.length();
+    while (start < end && Character.isWhitespace(name.charAt(start))) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(name.charAt(end - 1))) {
+      end--;
+    }
+    if (start < end) {
+      String entry = name.substring(start, end);
+      if (entry.chars().anyMatch(Character::isWhitespace)) {
+        invalidConsumer.accept(entry);
+      } else {
+        implConsumer.accept(entry);
+      }
+    }
+    name.setLength(0);
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import com.squareup.javapoet.ClassName;
+import java.util.List;
+import java.util.Optional;
+
+/** An implementation listed for a service, resolved to the type referenced by generated code. */
+class ServiceImplementation {
+
+  private final String name;
+  private final ClassName type;
+  private final String key;
+  private final ServiceScope.Scope scope;
+  private final List<ClassName> dependencies;
+
+  /**
+   * @param name the name as listed in the services file
+   * @param type the implementation type
+   * @param key the {@link ServiceKey} of the implementation, {@code null} when it has none
+   * @param scope the {@link ServiceScope} of the implementation
+   * @param dependencies the implementations of the same service this one depends on, from its
+   *     {@link ServiceOrder}
+   */
+  ServiceImplementation(
+      String name,
+      ClassName type,
+      String key,
+      ServiceScope.Scope scope,
+      List<ClassName> dependencies) {
+    this.name = name;
+    this.type = type;
+    this.key = key;
+    this.scope = scope;
+    this.dependencies = dependencies;
+  }
+
+  String name() {
+    return name;
+  }
+
+  ClassName type() {
+    return type;
+  }
+
+  Optional<String> key() {
+    return Optional.ofNullable(key);
+  }
+
+  boolean isSingleton() {
+    return scope == ServiceScope.Scope.SINGLETON;
+  }
+
+  List<ClassName> dependencies() {
+    return dependencies;
+  }
+}
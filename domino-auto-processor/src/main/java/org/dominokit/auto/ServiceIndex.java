@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * The service index a library publishes with {@code dominoAutoWriteIndex}, listing every service it
+ * provides so that downstream compilations read one small file instead of its {@code
+ * META-INF/services} directory.
+ *
+ * <p>The first line holds the format version, every other line a binary service name followed by
+ * its implementations, separated by spaces, both sorted:
+ *
+ * <pre>
+ * domino-auto-index 1
+ * com.example.Service com.example.FirstImpl com.example.SecondImpl
+ * </pre>
+ */
+class ServiceIndex {
+
+  static final String INDEX_DIRECTORY = "META-INF/domino-auto";
+  static final String INDEX_PATH = INDEX_DIRECTORY + "/index";
+  static final int VERSION = 1;
+
+  private static final String HEADER = "domino-auto-index " + VERSION;
+
+  private ServiceIndex() {}
+
+  static String write(Map<String, Set<String>> services) {
+    StringBuilder index = new StringBuilder(HEADER).append('\n');
+    new TreeMap<>(services)
+        .forEach(
+            (service, impls) -> {
+              if (impls.isEmpty()) {
+                return;
+              }
+              index.append(service);
+              new TreeSet<>(impls).forEach(impl -> index.append(' ').append(impl));
+              index.append('\n');
+            });
+    return index.toString();
+  }
+
+  /**
+   * Reads an index, keeping the services accepted by the filter.
+   *
+   * @return the services, or empty when the index has another version and the classpath element
+   *     must be scanned instead
+   */
+  static Optional<Map<String, Set<String>>> read(
+      InputStream content, Predicate<String> serviceFilter) throws IOException {
+    BufferedReader reader =
+        new BufferedReader(new InputStreamReader(content, StandardCharsets.UTF_8));
+    if (!HEADER.equals(reader.readLine())) {
+      return Optional.empty();
+    }
+    Map<String, Set<String>> services = new HashMap<>();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      String[] names = line.trim().split("\\s+");
+      if (names.length < 2 || !serviceFilter.test(names[0])) {
+        continue;
+      }
+      Set<String> impls = services.computeIfAbsent(names[0], name -> new TreeSet<>());
+      for (int i = 1; i < names.length; i++) {
+        impls.add(names[i]);
+      }
+    }
+    return Optional.of(services);
+  }
+}
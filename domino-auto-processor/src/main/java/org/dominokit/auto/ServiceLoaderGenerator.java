@@ -0,0 +1,817 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+
+/** Generates the {@code [Service]_ServiceLoader} source for a service and its implementations. */
+class ServiceLoaderGenerator {
+
+  static final String LOADER_SUFFIX = "_ServiceLoader";
+  static final String SINGLETON_SUFFIX = "_Singleton";
+
+  /** Changes whenever the shape of the generated code changes, it is part of the inputs hash. */
+  static final String GENERATOR_VERSION = "3";
+
+  private static final String INPUTS_HASH_PREFIX = "domino-auto inputs hash: ";
+
+  private static final ClassName GWT = ClassName.get("com.google.gwt.core.client", "GWT");
+  private static final ClassName RUN_ASYNC_CALLBACK =
+      ClassName.get("com.google.gwt.core.client", "RunAsyncCallback");
+
+  private final List<Element> originatingElements;
+  private final GeneratorOptions options;
+  // filled on the compiler thread before the loaders are generated, only read while generating
+  private final Map<String, ClassName> singletonHolders = new HashMap<>();
+
+  /**
+   * @param originatingElements the elements that configured the generation, reported to the Filer
+   *     so that incremental builds can track the generated loaders
+   * @param options the generation options
+   */
+  ServiceLoaderGenerator(List<Element> originatingElements, GeneratorOptions options) {
+    this.originatingElements = originatingElements;
+    this.options = options;
+  }
+
+  GeneratedSource generate(ServiceDefinition service) {
+    ClassName serviceType = service.type();
+    List<ServiceImplementation> impls = service.implementations();
+    ClassName loaderType = loaderType(serviceType);
+    TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), serviceType);
+
+    TypeSpec.Builder loader =
+        TypeSpec.classBuilder(loaderType)
+            .addModifiers(Modifier.PUBLIC)
+            .addMethod(loadMethod("load", serviceType, impls))
+            .addMethod(loadCachedMethod(loaderType, listType))
+            .addMethod(forEachMethod(serviceType, impls))
+            .addType(cachedServicesHolder(loaderType, listType))
+            .addMethod(providersMethod("providers", serviceType, impls))
+            .addMethod(streamMethod(serviceType))
+            .addMethod(findFirstMethod(serviceType, impls))
+            .addMethod(findByTypeMethod(serviceType, impls));
+    if (isKeyed(service)) {
+      loader.addMethod(getMethod("get", serviceType, impls));
+    }
+    if (options.isAsync(service.name())) {
+      loader.addMethod(loadAsyncMethod(loaderType, serviceType, impls));
+    }
+    if (options.isInitAll(service.name())) {
+      loader.addMethod(initAllMethod("initAll", serviceType, impls, CodeBlock.of("load()")));
+    }
+    return stamp(loader, loaderType, code -> inputsHash(service, code));
+  }
+
+  /**
+   * Generates a single registry class with {@code load[Service]()} and {@code providers[Service]()}
+   * accessors per service, a {@code get[Service](String key)} accessor for keyed services and an
+   * {@code initAll[Service]} for the services selected for it.
+   *
+   * @param delegates also generate a thin {@code [Service]_ServiceLoader} per service, with the
+   *     methods of a standalone loader implemented over the registry accessors
+   * @return the registry followed by the delegates
+   */
+  List<GeneratedSource> generateRegistry(
+      ClassName registryType, List<ServiceDefinition> services, boolean delegates) {
+    Map<String, String> accessors = accessorNames(services);
+    TypeSpec.Builder registry =
+        TypeSpec.classBuilder(registryType)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+    for (ServiceDefinition service : services) {
+      String accessor = accessors.get(service.name());
+      registry
+          .addMethod(loadMethod("load" + accessor, service.type(), service.implementations()))
+          .addMethod(
+              providersMethod("providers" + accessor, service.type(), service.implementations()));
+      if (isKeyed(service)) {
+        registry.addMethod(getMethod("get" + accessor, service.type(), service.implementations()));
+      }
+      if (options.isInitAll(service.name())) {
+        registry.addMethod(
+            initAllMethod(
+                "initAll" + accessor,
+                service.type(),
+                service.implementations(),
+                CodeBlock.of("load$L()", accessor)));
+      }
+    }
+
+    List<GeneratedSource> files = new ArrayList<>();
+    files.add(
+        stamp(
+            registry,
+            registryType,
+            code -> inputsHash(code, services.toArray(new ServiceDefinition[0]))));
+    if (delegates) {
+      services.forEach(
+          service -> files.add(delegate(service, registryType, accessors.get(service.name()))));
+    }
+    return files;
+  }
+
+  /**
+   * Generates a {@code load(Class)} facade over the loaders and the registry, a string switch on
+   * the service name replacing {@code java.util.ServiceLoader} without reflection or resource
+   * reads.
+   *
+   * @param loaders the services generated as {@code [Service]_ServiceLoader} classes
+   * @param registryType the registry holding {@code registryServices}, if any
+   * @param registryServices the services generated in the registry
+   * @param fallback load the services unknown at compile time with {@code java.util.ServiceLoader}
+   *     instead of returning an empty list
+   */
+  GeneratedSource generateServices(
+      ClassName servicesType,
+      List<ServiceDefinition> loaders,
+      Optional<ClassName> registryType,
+      List<ServiceDefinition> registryServices,
+      boolean fallback) {
+    Map<String, CodeBlock> loads = new TreeMap<>();
+    loaders.forEach(
+        service ->
+            loads.put(service.name(), CodeBlock.of("$T.load()", loaderType(service.type()))));
+    registryType.ifPresent(
+        registry ->
+            accessorNames(registryServices)
+                .forEach(
+                    (name, accessor) ->
+                        loads.put(name, CodeBlock.of("$T.load$L()", registry, accessor))));
+
+    TypeVariableName typeVariable = TypeVariableName.get("S");
+    TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), typeVariable);
+    MethodSpec.Builder load =
+        MethodSpec.methodBuilder("load")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addTypeVariable(typeVariable)
+            .returns(listType)
+            .addParameter(
+                ParameterizedTypeName.get(ClassName.get(Class.class), typeVariable), "service");
+    if (!loads.isEmpty()) {
+      load.addAnnotation(
+          AnnotationSpec.builder(SuppressWarnings.class)
+              .addMember("value", "$S", "unchecked")
+              .build());
+    }
+    load.beginControlFlow("switch (service.getName())");
+    loads.forEach(
+        (name, call) ->
+            load.addCode("case $S:\n$>", name)
+                .addStatement("return ($T) $L", listType, call)
+                .addCode("$<"));
+    load.addCode("default:\n$>");
+    if (fallback) {
+      load.addStatement("return serviceLoader(service)");
+    } else {
+      load.addStatement("return new $T<>()", ArrayList.class);
+    }
+    load.addCode("$<").endControlFlow();
+
+    TypeSpec.Builder services =
+        TypeSpec.classBuilder(servicesType)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+            .addMethod(load.build());
+    if (fallback) {
+      services.addMethod(
+          MethodSpec.methodBuilder("serviceLoader")
+              .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+              .addTypeVariable(typeVariable)
+              .returns(listType)
+              .addParameter(
+                  ParameterizedTypeName.get(ClassName.get(Class.class), typeVariable), "service")
+              .addStatement("$T services = new $T<>()", listType, ArrayList.class)
+              .addStatement("$T.load(service).forEach(services::add)", ServiceLoader.class)
+              .addStatement("return services")
+              .build());
+    }
+    List<ServiceDefinition> all = new ArrayList<>(loaders);
+    all.addAll(registryServices);
+    return stamp(
+        services, servicesType, code -> inputsHash(code, all.toArray(new ServiceDefinition[0])));
+  }
+
+  /**
+   * Places the holder of a singleton implementation next to {@code ownerType}, the first class
+   * generated by this compilation that lists it, and names it after that class. Another module
+   * listing the same implementation therefore never generates the same holder, the first placement
+   * of an implementation wins.
+   *
+   * @return the holder type
+   */
+  ClassName placeSingleton(ServiceImplementation impl, ClassName ownerType) {
+    ClassName holderType = singletonHolders.get(impl.name());
+    if (holderType != null) {
+      return holderType;
+    }
+    // implementations with the same simple names in different packages get numbered holders
+    String name =
+        String.join("_", ownerType.simpleNames())
+            + "_"
+            + String.join("_", impl.type().simpleNames());
+    holderType = ClassName.get(ownerType.packageName(), name + SINGLETON_SUFFIX);
+    for (int i = 2; singletonHolders.containsValue(holderType); i++) {
+      holderType = ClassName.get(ownerType.packageName(), name + i + SINGLETON_SUFFIX);
+    }
+    singletonHolders.put(impl.name(), holderType);
+    return holderType;
+  }
+
+  /**
+   * Generates the {@code [Owner]_[Implementation]_Singleton} holder of a singleton implementation,
+   * shared by the loaders of all the services it implements. The instance is created by the holder
+   * static initializer on first access, lazily and thread safe on the JVM and as a plain lazy
+   * clinit in J2CL/GWT.
+   *
+   * @see #placeSingleton(ServiceImplementation, ClassName)
+   */
+  GeneratedSource generateSingleton(ServiceImplementation impl) {
+    ClassName holderType = singletonHolder(impl);
+    TypeSpec.Builder holder =
+        TypeSpec.classBuilder(holderType)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addField(
+                FieldSpec.builder(
+                        impl.type(), "INSTANCE", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("new $T()", impl.type())
+                    .build())
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+    return stamp(holder, holderType, code -> inputsHash(code));
+  }
+
+  /**
+   * Generates a {@code [Service]_ServiceLoader} with the methods of a standalone loader, delegating
+   * to the registry accessors. The lookups go through the registry providers so that they only
+   * instantiate the implementations they return.
+   */
+  private GeneratedSource delegate(
+      ServiceDefinition service, ClassName registryType, String accessor) {
+    ClassName serviceType = service.type();
+    ClassName loaderType = loaderType(serviceType);
+    TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), serviceType);
+    TypeName providersType =
+        ParameterizedTypeName.get(ClassName.get(List.class), providerType(serviceType));
+    TypeVariableName typeVariable = TypeVariableName.get("T", serviceType);
+    TypeSpec.Builder loader =
+        TypeSpec.classBuilder(loaderType)
+            .addModifiers(Modifier.PUBLIC)
+            .addMethod(
+                MethodSpec.methodBuilder("load")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .returns(listType)
+                    .addStatement("return $T.load$L()", registryType, accessor)
+                    .build())
+            .addMethod(loadCachedMethod(loaderType, listType))
+            .addType(cachedServicesHolder(loaderType, listType))
+            .addMethod(
+                MethodSpec.methodBuilder("forEach")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addParameter(
+                        ParameterizedTypeName.get(
+                            ClassName.get(Consumer.class),
+                            WildcardTypeName.supertypeOf(serviceType)),
+                        "consumer")
+                    .addStatement("load().forEach(consumer)")
+                    .build())
+            .addMethod(
+                MethodSpec.methodBuilder("providers")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .returns(providersType)
+                    .addStatement("return $T.providers$L()", registryType, accessor)
+                    .build())
+            .addMethod(streamMethod(serviceType))
+            .addMethod(
+                MethodSpec.methodBuilder("findFirst")
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .returns(ParameterizedTypeName.get(ClassName.get(Optional.class), serviceType))
+                    .addStatement("$T providers = providers()", providersType)
+                    .addStatement(
+                        "return providers.isEmpty() ? $T.empty() : $T.of(providers.get(0).get())",
+                        Optional.class,
+                        Optional.class)
+                    .build())
+            .addMethod(
+                MethodSpec.methodBuilder("findByType")
+                    .addAnnotation(
+                        AnnotationSpec.builder(SuppressWarnings.class)
+                            .addMember("value", "$S", "unchecked")
+                            .build())
+                    .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                    .addTypeVariable(typeVariable)
+                    .returns(ParameterizedTypeName.get(ClassName.get(Optional.class), typeVariable))
+                    .addParameter(
+                        ParameterizedTypeName.get(ClassName.get(Class.class), typeVariable), "type")
+                    .beginControlFlow("for ($T provider : providers())", providerType(serviceType))
+                    .beginControlFlow("if (provider.type() == type)")
+                    .addStatement("return $T.of(($T) provider.get())", Optional.class, typeVariable)
+                    .endControlFlow()
+                    .endControlFlow()
+                    .addStatement("return $T.empty()", Optional.class)
+                    .build());
+    if (isKeyed(service)) {
+      loader.addMethod(
+          MethodSpec.methodBuilder("get")
+              .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+              .returns(ParameterizedTypeName.get(ClassName.get(Optional.class), serviceType))
+              .addParameter(String.class, "key")
+              .addStatement("return $T.get$L(key)", registryType, accessor)
+              .build());
+    }
+    if (options.isInitAll(service.name())) {
+      loader.addMethod(
+          MethodSpec.methodBuilder("initAll")
+              .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+              .returns(ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), listType))
+              .addParameter(Executor.class, "executor")
+              .addParameter(
+                  ParameterizedTypeName.get(
+                      ClassName.get(Consumer.class), WildcardTypeName.supertypeOf(serviceType)),
+                  "initializer")
+              .addStatement("return $T.initAll$L(executor, initializer)", registryType, accessor)
+              .build());
+    }
+    return stamp(loader, loaderType, code -> inputsHash(service, code));
+  }
+
+  /**
+   * Names the registry accessors after the service simple names, services sharing a simple name are
+   * named after their qualified names instead.
+   */
+  static Map<String, String> accessorNames(List<ServiceDefinition> services) {
+    Map<String, Long> simpleNameCounts =
+        services.stream()
+            .collect(
+                Collectors.groupingBy(
+                    service -> String.join("", service.type().simpleNames()),
+                    Collectors.counting()));
+    Map<String, String> accessors = new LinkedHashMap<>();
+    for (ServiceDefinition service : services) {
+      String simpleName = String.join("", service.type().simpleNames());
+      if (simpleNameCounts.get(simpleName) == 1) {
+        accessors.put(service.name(), simpleName);
+      } else {
+        StringBuilder qualifiedName = new StringBuilder();
+        for (String segment : service.type().canonicalName().split("\\.")) {
+          qualifiedName
+              .append(Character.toUpperCase(segment.charAt(0)))
+              .append(segment.substring(1));
+        }
+        accessors.put(service.name(), qualifiedName.toString());
+      }
+    }
+    return accessors;
+  }
+
+  static ClassName loaderType(ClassName serviceType) {
+    return ClassName.get(
+        serviceType.packageName(), String.join("_", serviceType.simpleNames()) + LOADER_SUFFIX);
+  }
+
+  private ClassName singletonHolder(ServiceImplementation impl) {
+    ClassName holderType = singletonHolders.get(impl.name());
+    if (holderType == null) {
+      throw new IllegalStateException("No holder placed for the singleton " + impl.name());
+    }
+    return holderType;
+  }
+
+  private static boolean isKeyed(ServiceDefinition service) {
+    return service.implementations().stream().anyMatch(impl -> impl.key().isPresent());
+  }
+
+  /**
+   * Adds the originating elements, renders the file and stamps its header with the inputs hash. The
+   * header is prepended to the rendered code as JavaPoet would emit it as a file comment, so that
+   * the file is only rendered once.
+   */
+  private GeneratedSource stamp(
+      TypeSpec.Builder type, ClassName typeName, Function<String, String> inputsHash) {
+    originatingElements.forEach(type::addOriginatingElement);
+    TypeSpec spec = type.build();
+    String code =
+        JavaFile.builder(typeName.packageName(), spec).skipJavaLangImports(true).build().toString();
+    String header =
+        "// Generated by domino-auto, do not edit.\n// "
+            + INPUTS_HASH_PREFIX
+            + inputsHash.apply(code)
+            + "\n";
+    return new GeneratedSource(
+        typeName.packageName(), spec.name, header + code, spec.originatingElements);
+  }
+
+  /**
+   * Hashes everything the generated loader depends on: the generator version, the service, the
+   * implementations in generation order and the rendered code, which reflects the generation
+   * options.
+   */
+  static String inputsHash(ServiceDefinition service, String code) {
+    return inputsHash(code, service);
+  }
+
+  private static String inputsHash(String code, ServiceDefinition... services) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update(GENERATOR_VERSION.getBytes(StandardCharsets.UTF_8));
+    for (ServiceDefinition service : services) {
+      digest.update((byte) 0);
+      digest.update(service.name().getBytes(StandardCharsets.UTF_8));
+      for (ServiceImplementation impl : service.implementations()) {
+        digest.update((byte) 0);
+        digest.update(impl.name().getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    digest.update((byte) 0);
+    digest.update(code.getBytes(StandardCharsets.UTF_8));
+    return new BigInteger(1, digest.digest()).toString(16);
+  }
+
+  /** Extracts the inputs hash stamped in the header of a generated loader source. */
+  static Optional<String> inputsHashOf(String source) {
+    int start = source.indexOf(INPUTS_HASH_PREFIX);
+    if (start < 0) {
+      return Optional.empty();
+    }
+    start += INPUTS_HASH_PREFIX.length();
+    int end = start;
+    while (end < source.length() && Character.isLetterOrDigit(source.charAt(end))) {
+      end++;
+    }
+    return Optional.of(source.substring(start, end));
+  }
+
+  private MethodSpec loadMethod(
+      String name, ClassName serviceType, List<ServiceImplementation> impls) {
+    TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), serviceType);
+    CodeBlock.Builder body = CodeBlock.builder();
+    body.addStatement("$T services = new $T<>($L)", listType, ArrayList.class, impls.size());
+    impls.forEach(impl -> body.addStatement("services.add($L)", newInstance(serviceType, impl)));
+    body.addStatement("return services");
+
+    return MethodSpec.methodBuilder(name)
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .returns(listType)
+        .addCode(body.build())
+        .build();
+  }
+
+  /**
+   * The cached services live in a nested holder class, its static initializer runs once on first
+   * access which is lazy and thread safe on the JVM and maps to a plain lazy clinit in J2CL/GWT.
+   */
+  private MethodSpec loadCachedMethod(ClassName loaderType, TypeName listType) {
+    return MethodSpec.methodBuilder("loadCached")
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .returns(listType)
+        .addStatement("return $T.SERVICES", cachedServicesType(loaderType))
+        .build();
+  }
+
+  private TypeSpec cachedServicesHolder(ClassName loaderType, TypeName listType) {
+    return TypeSpec.classBuilder(cachedServicesType(loaderType))
+        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+        .addField(
+            FieldSpec.builder(
+                    listType, "SERVICES", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.unmodifiableList(load())", Collections.class)
+                .build())
+        .build();
+  }
+
+  /** Instantiates and dispatches each implementation without collecting them. */
+  private MethodSpec forEachMethod(ClassName serviceType, List<ServiceImplementation> impls) {
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("forEach")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addParameter(
+                ParameterizedTypeName.get(
+                    ClassName.get(Consumer.class), WildcardTypeName.supertypeOf(serviceType)),
+                "consumer");
+    impls.forEach(
+        impl -> method.addStatement("consumer.accept($L)", newInstance(serviceType, impl)));
+    return method.build();
+  }
+
+  private MethodSpec providersMethod(
+      String name, ClassName serviceType, List<ServiceImplementation> impls) {
+    TypeName providersType =
+        ParameterizedTypeName.get(ClassName.get(List.class), providerType(serviceType));
+    CodeBlock.Builder body = CodeBlock.builder();
+    body.addStatement("$T providers = new $T<>($L)", providersType, ArrayList.class, impls.size());
+    impls.forEach(
+        impl ->
+            body.addStatement(
+                "providers.add($T.of($T.class, () -> $L))",
+                ServiceProvider.class,
+                impl.type(),
+                newInstance(serviceType, impl)));
+    body.addStatement("return providers");
+
+    return MethodSpec.methodBuilder(name)
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .returns(providersType)
+        .addCode(body.build())
+        .build();
+  }
+
+  private MethodSpec streamMethod(ClassName serviceType) {
+    return MethodSpec.methodBuilder("stream")
+        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+        .returns(ParameterizedTypeName.get(ClassName.get(Stream.class), providerType(serviceType)))
+        .addStatement("return providers().stream()")
+        .build();
+  }
+
+  private MethodSpec findFirstMethod(ClassName serviceType, List<ServiceImplementation> impls) {
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("findFirst")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .returns(ParameterizedTypeName.get(ClassName.get(Optional.class), serviceType));
+    if (impls.isEmpty()) {
+      return method.addStatement("return $T.empty()", Optional.class).build();
+    }
+    return method
+        .addStatement("return $T.of($L)", Optional.class, newInstance(serviceType, impls.get(0)))
+        .build();
+  }
+
+  private MethodSpec findByTypeMethod(ClassName serviceType, List<ServiceImplementation> impls) {
+    TypeVariableName typeVariable = TypeVariableName.get("T", serviceType);
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("findByType")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addTypeVariable(typeVariable)
+            .returns(ParameterizedTypeName.get(ClassName.get(Optional.class), typeVariable))
+            .addParameter(
+                ParameterizedTypeName.get(ClassName.get(Class.class), typeVariable), "type");
+    if (!impls.isEmpty()) {
+      method.addAnnotation(
+          AnnotationSpec.builder(SuppressWarnings.class)
+              .addMember("value", "$S", "unchecked")
+              .build());
+    }
+    impls.forEach(
+        impl ->
+            method
+                .beginControlFlow("if (type == $T.class)", impl.type())
+                .addStatement(
+                    "return $T.of(($T) $L)",
+                    Optional.class,
+                    typeVariable,
+                    newInstance(serviceType, impl))
+                .endControlFlow());
+    return method.addStatement("return $T.empty()", Optional.class).build();
+  }
+
+  /** Dispatches on the {@link ServiceKey} with a string switch, creating only the selected one. */
+  private MethodSpec getMethod(
+      String name, ClassName serviceType, List<ServiceImplementation> impls) {
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder(name)
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .returns(ParameterizedTypeName.get(ClassName.get(Optional.class), serviceType))
+            .addParameter(String.class, "key")
+            .beginControlFlow("switch (key)");
+    impls.forEach(
+        impl ->
+            impl.key()
+                .ifPresent(
+                    key ->
+                        method
+                            .addCode("case $S:\n$>", key)
+                            .addStatement(
+                                "return $T.of($L)", Optional.class, newInstance(serviceType, impl))
+                            .addCode("$<")));
+    return method
+        .addCode("default:\n$>")
+        .addStatement("return $T.empty()", Optional.class)
+        .addCode("$<")
+        .endControlFlow()
+        .build();
+  }
+
+  /**
+   * Creates the implementations behind split points, either one for the whole service or one per
+   * implementation, so that the implementations code is only fetched when {@code loadAsync} runs.
+   */
+  private MethodSpec loadAsyncMethod(
+      ClassName loaderType, ClassName serviceType, List<ServiceImplementation> impls) {
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("loadAsync")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addParameter(
+                ParameterizedTypeName.get(ClassName.get(AsyncServicesCallback.class), serviceType),
+                "callback");
+    if (impls.isEmpty()) {
+      return method.addStatement("callback.onSuccess(new $T<>())", ArrayList.class).build();
+    }
+
+    TypeName joinType =
+        ParameterizedTypeName.get(ClassName.get(AsyncServicesJoin.class), serviceType);
+    method.addStatement(
+        "$T join = new $T<>($L, callback)", joinType, AsyncServicesJoin.class, impls.size());
+    if (options.asyncSplit() == GeneratorOptions.AsyncSplit.SERVICE) {
+      CodeBlock.Builder loads = CodeBlock.builder();
+      for (int i = 0; i < impls.size(); i++) {
+        loads.addStatement("join.load($L, () -> $L)", i, newInstance(serviceType, impls.get(i)));
+      }
+      return method.addCode(splitPoint(loaderType, loads.build())).build();
+    }
+    for (int i = 0; i < impls.size(); i++) {
+      ServiceImplementation impl = impls.get(i);
+      method.addCode(
+          splitPoint(
+              impl.type(),
+              CodeBlock.builder()
+                  .addStatement("join.load($L, () -> $L)", i, newInstance(serviceType, impl))
+                  .build()));
+    }
+    return method.build();
+  }
+
+  /**
+   * Generates {@code initAll(Executor, Consumer)}, which loads the implementations in order and
+   * calls the initializer on them layer by layer: the implementations of a layer only depend on
+   * implementations of the previous layers and are initialized concurrently on the executor.
+   *
+   * @param load the call loading the implementations in order
+   */
+  private MethodSpec initAllMethod(
+      String name, ClassName serviceType, List<ServiceImplementation> impls, CodeBlock load) {
+    TypeName listType = ParameterizedTypeName.get(ClassName.get(List.class), serviceType);
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder(name)
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .returns(ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), listType))
+            .addParameter(Executor.class, "executor")
+            .addParameter(
+                ParameterizedTypeName.get(
+                    ClassName.get(Consumer.class), WildcardTypeName.supertypeOf(serviceType)),
+                "initializer")
+            .addStatement("$T services = $L", listType, load);
+    List<List<Integer>> layers = initializationLayers(impls);
+    if (layers.isEmpty()) {
+      return method
+          .addStatement("return $T.completedFuture(services)", CompletableFuture.class)
+          .build();
+    }
+
+    TypeName layersType =
+        ParameterizedTypeName.get(
+            ClassName.get(CompletableFuture.class), ClassName.get(Void.class));
+    for (int layer = 0; layer < layers.size(); layer++) {
+      CodeBlock.Builder inits = CodeBlock.builder();
+      List<Integer> indexes = layers.get(layer);
+      for (int i = 0; i < indexes.size(); i++) {
+        inits.add(
+            "$L$T.runAsync(() -> initializer.accept(services.get($L)), executor)",
+            i == 0 ? "" : ",\n",
+            CompletableFuture.class,
+            indexes.get(i));
+      }
+      if (layer == 0) {
+        method.addStatement(
+            "$T layers =\n$T.allOf(\n$>$>$L)$<$<",
+            layersType,
+            CompletableFuture.class,
+            inits.build());
+      } else {
+        method.addStatement(
+            "layers =\nlayers.thenCompose(\n$>$>ignored ->\n$>$>$T.allOf(\n$>$>$L))$<$<$<$<$<$<",
+            CompletableFuture.class,
+            inits.build());
+      }
+    }
+    return method.addStatement("return layers.thenApply(ignored -> services)").build();
+  }
+
+  /**
+   * Groups the indexes of the ordered implementations by layer, an implementation belongs to the
+   * layer after the last layer of its dependencies.
+   */
+  private static List<List<Integer>> initializationLayers(List<ServiceImplementation> impls) {
+    Map<ClassName, Integer> layerOf = new HashMap<>();
+    List<List<Integer>> layers = new ArrayList<>();
+    for (int i = 0; i < impls.size(); i++) {
+      ServiceImplementation impl = impls.get(i);
+      int layer =
+          impl.dependencies().stream()
+              .filter(layerOf::containsKey)
+              .mapToInt(dependency -> layerOf.get(dependency) + 1)
+              .max()
+              .orElse(0);
+      layerOf.putIfAbsent(impl.type(), layer);
+      if (layer == layers.size()) {
+        layers.add(new ArrayList<>());
+      }
+      layers.get(layer).add(i);
+    }
+    return layers;
+  }
+
+  private CodeBlock splitPoint(ClassName splitPoint, CodeBlock onLoaded) {
+    if (options.splitPoints() == GeneratorOptions.SplitPoints.GWT2) {
+      TypeSpec callback =
+          TypeSpec.anonymousClassBuilder("")
+              .addSuperinterface(RUN_ASYNC_CALLBACK)
+              .addMethod(
+                  MethodSpec.methodBuilder("onFailure")
+                      .addAnnotation(Override.class)
+                      .addModifiers(Modifier.PUBLIC)
+                      .addParameter(Throwable.class, "reason")
+                      .addStatement("join.onFailure(reason)")
+                      .build())
+              .addMethod(
+                  MethodSpec.methodBuilder("onSuccess")
+                      .addAnnotation(Override.class)
+                      .addModifiers(Modifier.PUBLIC)
+                      .addCode(onLoaded)
+                      .build())
+              .build();
+      return CodeBlock.builder()
+          .addStatement("$T.runAsync($T.class, $L)", GWT, splitPoint, callback)
+          .build();
+    }
+    return CodeBlock.builder()
+        .add("$T.runAsync(\n$>$>$T.class,\n() -> {\n$>", DominoAutoAsync.class, splitPoint)
+        .add(onLoaded)
+        .add("$<},\njoin::onFailure);\n$<$<")
+        .build();
+  }
+
+  /**
+   * The expression creating an instance of an implementation, or reading its singleton, wrapped in
+   * {@link DominoAutoTiming#time} when the timing is enabled.
+   */
+  private CodeBlock newInstance(ClassName serviceType, ServiceImplementation impl) {
+    CodeBlock instance =
+        impl.isSingleton()
+            ? CodeBlock.of("$T.INSTANCE", singletonHolder(impl))
+            : CodeBlock.of("new $T()", impl.type());
+    if (!options.timing()) {
+      return instance;
+    }
+    return CodeBlock.of(
+        "$T.time($S, $S, () -> $L)",
+        DominoAutoTiming.class,
+        serviceType.reflectionName(),
+        impl.type().reflectionName(),
+        instance);
+  }
+
+  private static TypeName providerType(ClassName serviceType) {
+    return ParameterizedTypeName.get(ClassName.get(ServiceProvider.class), serviceType);
+  }
+
+  private static ClassName cachedServicesType(ClassName loaderType) {
+    return loaderType.nestedClass("CachedServices");
+  }
+}
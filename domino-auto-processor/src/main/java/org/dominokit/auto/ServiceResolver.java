@@ -0,0 +1,390 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import com.squareup.javapoet.ClassName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Resolves services and their implementations through the javac model and validates that every
+ * implementation can be instantiated by the generated loader.
+ *
+ * <p>Problems are reported with the configured {@link Diagnostic.Kind}, a {@code null} kind
+ * disables the validation. When pruning is enabled, invalid and duplicate implementations are left
+ * out of the generated loader. Implementations whose {@link ServiceCondition} does not match are
+ * always left out, the others are sorted by their {@link ServiceOrder}.
+ */
+class ServiceResolver {
+
+  private final HasProcessorEnv env;
+  private final SourceUtil sourceUtil;
+  private final Diagnostic.Kind validationKind;
+  private final boolean prune;
+  private final Function<String, String> properties;
+
+  /**
+   * @param properties resolves the properties of the {@link ServiceCondition}s, {@code null} when a
+   *     property is not set
+   */
+  ServiceResolver(
+      HasProcessorEnv env,
+      SourceUtil sourceUtil,
+      Diagnostic.Kind validationKind,
+      boolean prune,
+      Function<String, String> properties) {
+    this.env = env;
+    this.sourceUtil = sourceUtil;
+    this.validationKind = validationKind;
+    this.prune = prune;
+    this.properties = properties;
+  }
+
+  /** @return the resolved service, empty when no loader can be generated for it. */
+  Optional<ServiceDefinition> resolve(String service, Collection<String> impls) {
+    TypeElement serviceElement = typeElement(service);
+    ClassName serviceType;
+    if (serviceElement != null) {
+      serviceType = ClassName.get(serviceElement);
+    } else {
+      report("Service type [" + service + "] cannot be found on the compile classpath");
+      Optional<ClassName> guessedType = guessType(service);
+      if (!guessedType.isPresent()) {
+        warn("Skipping service [" + service + "] : invalid name");
+        return Optional.empty();
+      }
+      serviceType = guessedType.get();
+    }
+
+    Map<String, ServiceImplementation> resolved = new LinkedHashMap<>();
+    Map<String, String> keys = new HashMap<>();
+    Map<ServiceImplementation, Integer> orders = new HashMap<>();
+    for (String impl : impls) {
+      TypeElement implElement = typeElement(impl);
+      if (implElement != null && !conditionMatches(implElement)) {
+        continue;
+      }
+      List<String> problems = new ArrayList<>();
+      ClassName implType;
+      if (implElement != null) {
+        implType = ClassName.get(implElement);
+        if (validationKind != null && serviceElement != null) {
+          problems.addAll(validate(serviceElement, implElement));
+        }
+      } else {
+        problems.add("cannot be found on the compile classpath");
+        Optional<ClassName> guessedType = guessType(impl);
+        if (!guessedType.isPresent()) {
+          warn(
+              "Skipping implementation [" + impl + "] of service [" + service + "] : invalid name");
+          continue;
+        }
+        implType = guessedType.get();
+      }
+
+      problems.forEach(
+          problem ->
+              report("Implementation [" + impl + "] of service [" + service + "] " + problem));
+      if (prune && !problems.isEmpty()) {
+        continue;
+      }
+
+      String qualifiedName = implType.canonicalName();
+      if (resolved.containsKey(qualifiedName)) {
+        report(
+            "Implementation ["
+                + impl
+                + "] of service ["
+                + service
+                + "] is listed more than once as ["
+                + resolved.get(qualifiedName).name()
+                + "]");
+        if (prune) {
+          continue;
+        }
+        qualifiedName = impl;
+      }
+      String key = serviceKey(service, impl, implElement, keys);
+      ServiceOrder order =
+          implElement == null ? null : implElement.getAnnotation(ServiceOrder.class);
+      ServiceImplementation implementation =
+          new ServiceImplementation(
+              impl,
+              implType,
+              key,
+              scope(implElement),
+              order == null ? List.of() : dependencies(implElement));
+      if (order != null) {
+        orders.put(implementation, order.value());
+      }
+      resolved.put(qualifiedName, implementation);
+    }
+
+    return Optional.of(
+        new ServiceDefinition(
+            service, serviceType, order(service, new ArrayList<>(resolved.values()), orders)));
+  }
+
+  /**
+   * Sorts the implementations so that each one comes after the implementations it depends on, then
+   * by {@link ServiceOrder#value()}, then in their current order. Dependencies on types that are
+   * not implementations of the service are ignored. A dependency cycle is an error, the
+   * implementations of the cycle are then appended by order.
+   */
+  private List<ServiceImplementation> order(
+      String service,
+      List<ServiceImplementation> impls,
+      Map<ServiceImplementation, Integer> orders) {
+    if (orders.isEmpty()) {
+      return impls;
+    }
+    Map<ClassName, Integer> indexes = new HashMap<>();
+    List<List<Integer>> dependents = new ArrayList<>();
+    for (int i = 0; i < impls.size(); i++) {
+      indexes.putIfAbsent(impls.get(i).type(), i);
+      dependents.add(new ArrayList<>());
+    }
+    int[] pending = new int[impls.size()];
+    for (int i = 0; i < impls.size(); i++) {
+      for (ClassName dependency : impls.get(i).dependencies()) {
+        Integer index = indexes.get(dependency);
+        if (index != null) {
+          pending[i]++;
+          dependents.get(index).add(i);
+        }
+      }
+    }
+
+    Comparator<Integer> byOrder =
+        Comparator.<Integer>comparingInt(i -> orders.getOrDefault(impls.get(i), 0))
+            .thenComparingInt(i -> i);
+    PriorityQueue<Integer> ready = new PriorityQueue<>(byOrder);
+    IntStream.range(0, impls.size()).filter(i -> pending[i] == 0).forEach(ready::add);
+    List<ServiceImplementation> ordered = new ArrayList<>(impls.size());
+    boolean[] sorted = new boolean[impls.size()];
+    while (!ready.isEmpty()) {
+      int index = ready.poll();
+      ordered.add(impls.get(index));
+      sorted[index] = true;
+      for (int dependent : dependents.get(index)) {
+        if (--pending[dependent] == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+
+    if (ordered.size() < impls.size()) {
+      error(
+          "Implementations of service ["
+              + service
+              + "] have a dependency cycle : "
+              + cycle(impls, indexes, sorted));
+      IntStream.range(0, impls.size())
+          .filter(i -> !sorted[i])
+          .boxed()
+          .sorted(byOrder)
+          .forEach(i -> ordered.add(impls.get(i)));
+    }
+    return ordered;
+  }
+
+  /**
+   * Follows the dependencies of the unsorted implementations, each of them has an unsorted
+   * dependency, until one repeats.
+   */
+  private static String cycle(
+      List<ServiceImplementation> impls, Map<ClassName, Integer> indexes, boolean[] sorted) {
+    List<Integer> path = new ArrayList<>();
+    int current = IntStream.range(0, impls.size()).filter(i -> !sorted[i]).findFirst().getAsInt();
+    while (!path.contains(current)) {
+      path.add(current);
+      current =
+          impls.get(current).dependencies().stream()
+              .map(indexes::get)
+              .filter(index -> index != null && !sorted[index])
+              .findFirst()
+              .get();
+    }
+    List<Integer> cycle = new ArrayList<>(path.subList(path.indexOf(current), path.size()));
+    cycle.add(current);
+    return cycle.stream().map(i -> impls.get(i).name()).collect(Collectors.joining(" -> "));
+  }
+
+  /** @return the distinct {@link ServiceOrder#dependsOn()} types of the implementation. */
+  private List<ClassName> dependencies(TypeElement implElement) {
+    List<ClassName> dependencies = new ArrayList<>();
+    for (TypeMirror dependency :
+        sourceUtil.getClassArrayValueFromAnnotation(implElement, ServiceOrder.class, "dependsOn")) {
+      Element element = env.types().asElement(dependency);
+      if (element instanceof TypeElement) {
+        ClassName type = ClassName.get((TypeElement) element);
+        if (!dependencies.contains(type)) {
+          dependencies.add(type);
+        }
+      }
+    }
+    return dependencies;
+  }
+
+  /** @return whether the {@link ServiceCondition} of the implementation, if any, matches. */
+  private boolean conditionMatches(TypeElement implElement) {
+    ServiceCondition condition = implElement.getAnnotation(ServiceCondition.class);
+    if (condition == null) {
+      return true;
+    }
+    String value = properties.apply(condition.property());
+    if (value == null) {
+      return condition.matchIfMissing();
+    }
+    if (condition.havingValue().length == 0) {
+      return !"false".equalsIgnoreCase(value.trim());
+    }
+    return Arrays.stream(condition.havingValue())
+        .anyMatch(expected -> expected.equalsIgnoreCase(value.trim()));
+  }
+
+  private static ServiceScope.Scope scope(TypeElement implElement) {
+    ServiceScope scope = implElement == null ? null : implElement.getAnnotation(ServiceScope.class);
+    return scope == null ? ServiceScope.Scope.PROTOTYPE : scope.value();
+  }
+
+  /**
+   * Reads the {@link ServiceKey} of an implementation, blank and duplicate keys are errors since
+   * lookups by these keys would be ambiguous, the implementation is then generated without a key.
+   */
+  private String serviceKey(
+      String service, String impl, TypeElement implElement, Map<String, String> keys) {
+    ServiceKey serviceKey =
+        implElement == null ? null : implElement.getAnnotation(ServiceKey.class);
+    if (serviceKey == null) {
+      return null;
+    }
+    String key = serviceKey.value();
+    if (key.trim().isEmpty()) {
+      error("Implementation [" + impl + "] of service [" + service + "] has a blank service key");
+      return null;
+    }
+    if (keys.containsKey(key)) {
+      error(
+          "Implementation ["
+              + impl
+              + "] of service ["
+              + service
+              + "] uses the service key ["
+              + key
+              + "] already used by ["
+              + keys.get(key)
+              + "]");
+      return null;
+    }
+    keys.put(key, impl);
+    return key;
+  }
+
+  private List<String> validate(TypeElement serviceElement, TypeElement implElement) {
+    List<String> problems = new ArrayList<>();
+    if (implElement.getKind() != ElementKind.CLASS) {
+      problems.add("is not a class");
+    }
+    if (implElement.getModifiers().contains(Modifier.ABSTRACT)) {
+      problems.add("is abstract");
+    }
+    if (!isAccessible(implElement)) {
+      problems.add("is not public, or is nested in a non public type");
+    }
+    if (implElement.getNestingKind() == NestingKind.MEMBER
+        && !implElement.getModifiers().contains(Modifier.STATIC)) {
+      problems.add("is an inner class, it must be static");
+    }
+    if (!hasPublicNoArgConstructor(implElement)) {
+      problems.add("does not have a public no-arg constructor");
+    }
+    if (!sourceUtil.isAssignableFrom(serviceElement.asType(), implElement)) {
+      problems.add("does not implement " + serviceElement.getQualifiedName());
+    }
+    return problems;
+  }
+
+  private static boolean isAccessible(TypeElement element) {
+    Element current = element;
+    while (current instanceof TypeElement) {
+      if (!current.getModifiers().contains(Modifier.PUBLIC)) {
+        return false;
+      }
+      current = current.getEnclosingElement();
+    }
+    return true;
+  }
+
+  private static boolean hasPublicNoArgConstructor(TypeElement element) {
+    for (ExecutableElement constructor :
+        ElementFilter.constructorsIn(element.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty()
+          && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Resolves a type from its binary name, as used in services files, or its canonical name. */
+  private TypeElement typeElement(String name) {
+    TypeElement element = env.elements().getTypeElement(name.replace('$', '.'));
+    return element != null ? element : env.elements().getTypeElement(name);
+  }
+
+  private static Optional<ClassName> guessType(String name) {
+    try {
+      return Optional.of(ClassName.bestGuess(name.replace('$', '.')));
+    } catch (IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  private void warn(String message) {
+    env.messager().printMessage(Diagnostic.Kind.WARNING, message);
+  }
+
+  private void error(String message) {
+    env.messager().printMessage(Diagnostic.Kind.ERROR, message);
+  }
+
+  private void report(String message) {
+    if (validationKind != null) {
+      env.messager().printMessage(validationKind, message);
+    }
+  }
+}
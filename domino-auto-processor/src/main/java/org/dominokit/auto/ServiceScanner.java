@@ -0,0 +1,269 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import static java.util.Objects.nonNull;
+
+import io.github.classgraph.ClassGraph;
+import io.github.classgraph.Resource;
+import io.github.classgraph.ResourceList;
+import io.github.classgraph.ScanResult;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Scans {@code META-INF/services} resources on the classpath and groups the matching service
+ * entries by the classpath element that contributed them. Elements publishing a {@link
+ * ServiceIndex} that lists every services file of the element are read from their index instead,
+ * e.g. a shaded jar merging the services files of several libraries under one index is scanned.
+ */
+class ServiceScanner {
+
+  static final String SERVICES_PATH = "META-INF/services";
+
+  private final Predicate<String> serviceFilter;
+  private final boolean countsResources;
+  private final List<File> classpath;
+  private final int threads;
+  private final Set<String> acceptJars;
+  private final Set<String> rejectJars;
+  private final ProcessorMetrics metrics;
+  private final Consumer<String> invalidEntries;
+
+  /**
+   * @param serviceFilter decides which service names are collected, {@code null} collects every
+   *     service and leaves the resource counts to the caller filtering them
+   * @param classpath the classpath to scan, or {@code null} to scan the classpath of the processor
+   *     class loader
+   * @param threads the number of scanning workers, {@code 0} or less uses the ClassGraph default
+   * @param acceptJars jar leaf name globs to scan, every jar is scanned when empty
+   * @param rejectJars jar leaf name globs to skip without opening them
+   * @param metrics records the scan, filter and read phases and the resource counts
+   * @param invalidEntries receives a message per malformed services file entry, the entry is
+   *     skipped
+   */
+  ServiceScanner(
+      Predicate<String> serviceFilter,
+      List<File> classpath,
+      int threads,
+      Set<String> acceptJars,
+      Set<String> rejectJars,
+      ProcessorMetrics metrics,
+      Consumer<String> invalidEntries) {
+    this.serviceFilter = nonNull(serviceFilter) ? serviceFilter : service -> true;
+    this.countsResources = nonNull(serviceFilter);
+    this.classpath = classpath;
+    this.threads = threads;
+    this.acceptJars = acceptJars;
+    this.rejectJars = rejectJars;
+    this.metrics = metrics;
+    this.invalidEntries = invalidEntries;
+  }
+
+  /** @return the classpath elements that a full scan would visit, in resolution order. */
+  List<File> classpathElements() {
+    long start = System.nanoTime();
+    List<File> elements = newClassGraph(classpath).getClasspathFiles();
+    metrics.time(ProcessorMetrics.SCAN, start);
+    return elements;
+  }
+
+  /** Scans the whole classpath. */
+  Map<String, Map<String, Set<String>>> scan() throws IOException {
+    return scan(newClassGraph(classpath));
+  }
+
+  /** Scans only the given classpath elements. */
+  Map<String, Map<String, Set<String>>> scan(List<File> elements) throws IOException {
+    if (elements.isEmpty()) {
+      return new HashMap<>();
+    }
+    return scan(newClassGraph(elements));
+  }
+
+  /**
+   * @param classpath the elements to scan, or {@code null} for the processor class loader. {@link
+   *     ClassGraph#overrideClasspath} appends to the elements of earlier calls, it is called once.
+   */
+  private ClassGraph newClassGraph(List<File> classpath) {
+    ClassGraph classGraph =
+        new ClassGraph().acceptPathsNonRecursive(SERVICES_PATH, ServiceIndex.INDEX_DIRECTORY);
+    if (nonNull(classpath)) {
+      classGraph.overrideClasspath(classpath);
+    }
+    if (!acceptJars.isEmpty()) {
+      classGraph.acceptJars(acceptJars.toArray(new String[0]));
+    }
+    if (!rejectJars.isEmpty()) {
+      classGraph.rejectJars(rejectJars.toArray(new String[0]));
+    }
+    return classGraph;
+  }
+
+  /**
+   * @return the matching services keyed by the path of the classpath element that contributed them,
+   *     see {@link #pathOf(File)}.
+   */
+  private Map<String, Map<String, Set<String>>> scan(ClassGraph classGraph) throws IOException {
+    Map<String, Map<String, Set<String>>> elements = new HashMap<>();
+
+    long start = System.nanoTime();
+    try (ScanResult scanResult = threads > 0 ? classGraph.scan(threads) : classGraph.scan()) {
+      ResourceList all = scanResult.getAllResources();
+      metrics.time(ProcessorMetrics.SCAN, start);
+      metrics.count(ProcessorMetrics.ELEMENTS_SCANNED, scanResult.getClasspathFiles().size());
+
+      ResourceList servicesFiles = all.filter(res -> res.getPath().startsWith(SERVICES_PATH + "/"));
+      Map<String, Set<String>> servicesFileNames = new HashMap<>();
+      servicesFiles.forEach(
+          res ->
+              servicesFileNames
+                  .computeIfAbsent(pathOf(res.getClasspathElementFile()), path -> new HashSet<>())
+                  .add(serviceNameOf(res)));
+
+      start = System.nanoTime();
+      Set<String> indexed =
+          readIndexes(all.filter(ServiceScanner::isIndex), servicesFileNames, elements);
+      metrics.time(ProcessorMetrics.READ, start);
+
+      start = System.nanoTime();
+      ResourceList resources =
+          servicesFiles.filter(res -> !indexed.contains(pathOf(res.getClasspathElementFile())));
+      ResourceList accepted = resources.filter(res -> serviceFilter.test(serviceNameOf(res)));
+      metrics.time(ProcessorMetrics.FILTER, start);
+      if (countsResources) {
+        metrics.count(ProcessorMetrics.RESOURCES_SCANNED, resources.size());
+        metrics.count(ProcessorMetrics.RESOURCES_ACCEPTED, accepted.size());
+        metrics.count(ProcessorMetrics.RESOURCES_REJECTED, resources.size() - accepted.size());
+      }
+
+      start = System.nanoTime();
+      accepted.forEachInputStreamThrowingIOException(
+          (Resource res, InputStream content) -> {
+            Set<String> impls =
+                elements
+                    .computeIfAbsent(pathOf(res.getClasspathElementFile()), path -> new HashMap<>())
+                    .computeIfAbsent(serviceNameOf(res), name -> new HashSet<>());
+            ServiceFileParser.parse(
+                content,
+                impls::add,
+                entry ->
+                    invalidEntries.accept(
+                        invalidEntry(entry, res.getPath(), res.getClasspathElementFile())));
+          });
+      metrics.time(ProcessorMetrics.READ, start);
+    }
+    return elements;
+  }
+
+  /**
+   * Reads the indexes into the services of their classpath elements. An index that misses one of
+   * the services files of its element, e.g. the only index kept by a shaded jar, is ignored.
+   *
+   * @param servicesFileNames the service names of the services files, by element path
+   * @return the paths of the elements read from their index, their services files are skipped
+   */
+  private Set<String> readIndexes(
+      ResourceList indexes,
+      Map<String, Set<String>> servicesFileNames,
+      Map<String, Map<String, Set<String>>> elements)
+      throws IOException {
+    Set<String> indexed = new HashSet<>();
+    indexes.forEachInputStreamThrowingIOException(
+        (Resource res, InputStream content) -> {
+          String path = pathOf(res.getClasspathElementFile());
+          ServiceIndex.read(content, service -> true)
+              .filter(
+                  services ->
+                      services
+                          .keySet()
+                          .containsAll(servicesFileNames.getOrDefault(path, new HashSet<>())))
+              .ifPresent(
+                  services -> {
+                    indexed.add(path);
+                    services.forEach(
+                        (service, impls) -> {
+                          if (serviceFilter.test(service)) {
+                            elements
+                                .computeIfAbsent(path, key -> new HashMap<>())
+                                .computeIfAbsent(service, name -> new HashSet<>())
+                                .addAll(impls);
+                          }
+                        });
+                  });
+        });
+    metrics.count(ProcessorMetrics.INDEXES_READ, indexed.size());
+    return indexed;
+  }
+
+  static String invalidEntry(String entry, String servicesFile, File element) {
+    return "Skipping invalid entry ["
+        + entry
+        + "] of "
+        + servicesFile
+        + " in "
+        + pathOf(element)
+        + " : implementation names cannot contain whitespace";
+  }
+
+  private static boolean isIndex(Resource resource) {
+    return resource.getPath().equals(ServiceIndex.INDEX_PATH);
+  }
+
+  private static String serviceNameOf(Resource resource) {
+    return resource.getPath().substring(SERVICES_PATH.length() + 1);
+  }
+
+  /**
+   * Merges the services contributed by several classpath elements, the result is sorted so that the
+   * generated code does not depend on the scanning order.
+   */
+  static Map<String, Set<String>> merge(Collection<Map<String, Set<String>>> elements) {
+    Map<String, Set<String>> services = new TreeMap<>();
+    elements.forEach(
+        element ->
+            element.forEach(
+                (service, impls) ->
+                    services.computeIfAbsent(service, name -> new TreeSet<>()).addAll(impls)));
+    return services;
+  }
+
+  /**
+   * The canonical path of a classpath element, used to match scan results against the elements
+   * returned by {@link #classpathElements()} regardless of symlinks or relative entries.
+   */
+  static String pathOf(File element) {
+    if (element == null) {
+      return "";
+    }
+    try {
+      return element.getCanonicalPath();
+    } catch (IOException e) {
+      return element.getAbsolutePath();
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * An in-memory cache of the service entries of jars, shared by the compilations that run the
+ * processor from the same class loader.
+ *
+ * <p>The entries are kept in a static field, the cache is therefore per processor class loader and
+ * not per JVM: an IDE compile server or a build daemon that reuses the class loader of an unchanged
+ * processor path shares it across its compilations, a build tool creating a new class loader per
+ * compilation gets a cache per compilation. The entries hold JDK types only so that they do not
+ * retain anything but the class loader that already holds them. Only jars are cached, keyed by
+ * their path, size and last modified time, directories change between compilations and are always
+ * scanned. The entries are unfiltered so that compilations with different include configurations
+ * share them.
+ *
+ * <p>Each jar is loaded once: the first compilation missing it scans it while the concurrent ones
+ * wait for its result. The cache holds at most {@code maxSize} jars and evicts the least recently
+ * used ones.
+ */
+class SharedScanCache {
+
+  private static final Map<String, CompletableFuture<Map<String, Set<String>>>> SHARED =
+      new LinkedHashMap<>(64, 0.75f, true);
+
+  /** Scans classpath elements, see {@link ServiceScanner#scan(List)}. */
+  interface ElementScanner {
+    Map<String, Map<String, Set<String>>> scan(List<File> elements) throws IOException;
+  }
+
+  private final Map<String, CompletableFuture<Map<String, Set<String>>>> entries;
+  private final int maxSize;
+  private int hits;
+  private int misses;
+
+  SharedScanCache(Map<String, CompletableFuture<Map<String, Set<String>>>> entries, int maxSize) {
+    this.entries = entries;
+    this.maxSize = Math.max(1, maxSize);
+  }
+
+  /**
+   * @return the cache shared by the processor class loader, holding at most {@code maxSize} jars.
+   */
+  static SharedScanCache shared(int maxSize) {
+    return new SharedScanCache(SHARED, maxSize);
+  }
+
+  /**
+   * Scans the elements, the jars found in the cache are not scanned again.
+   *
+   * @return the services keyed by the path of the classpath element that contributed them
+   */
+  Map<String, Map<String, Set<String>>> scan(List<File> elements, ElementScanner scanner)
+      throws IOException {
+    Map<String, CompletableFuture<Map<String, Set<String>>>> loading = new LinkedHashMap<>();
+    Map<File, CompletableFuture<Map<String, Set<String>>>> waiting = new LinkedHashMap<>();
+    List<File> scanned = new ArrayList<>();
+    for (File element : elements) {
+      if (!isJar(element)) {
+        scanned.add(element);
+        continue;
+      }
+      String key = ServiceScanner.pathOf(element) + "|" + ScanCache.fingerprint(element);
+      synchronized (entries) {
+        CompletableFuture<Map<String, Set<String>>> entry = entries.get(key);
+        if (entry == null) {
+          entry = new CompletableFuture<>();
+          entries.put(key, entry);
+          evict();
+          loading.put(key, entry);
+          scanned.add(element);
+          misses++;
+        } else {
+          waiting.put(element, entry);
+          hits++;
+        }
+      }
+    }
+
+    Map<String, Map<String, Set<String>>> result;
+    try {
+      result = new HashMap<>(scanner.scan(scanned));
+    } catch (IOException | RuntimeException e) {
+      loading.forEach(
+          (key, entry) -> {
+            synchronized (entries) {
+              entries.remove(key, entry);
+            }
+            entry.completeExceptionally(e);
+          });
+      throw e;
+    }
+    // complete the loaded jars before waiting for the others, so that concurrent compilations
+    // waiting for each other always make progress
+    loading.forEach(
+        (key, entry) ->
+            entry.complete(
+                unmodifiable(
+                    result.getOrDefault(key.substring(0, key.lastIndexOf('|')), new HashMap<>()))));
+
+    List<File> failed = new ArrayList<>();
+    for (Map.Entry<File, CompletableFuture<Map<String, Set<String>>>> entry : waiting.entrySet()) {
+      try {
+        result.put(ServiceScanner.pathOf(entry.getKey()), entry.getValue().get());
+      } catch (ExecutionException e) {
+        failed.add(entry.getKey());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failed.add(entry.getKey());
+      }
+    }
+    if (!failed.isEmpty()) {
+      result.putAll(scanner.scan(failed));
+    }
+    return result;
+  }
+
+  int hits() {
+    return hits;
+  }
+
+  int misses() {
+    return misses;
+  }
+
+  private void evict() {
+    Iterator<String> eldest = entries.keySet().iterator();
+    while (entries.size() > maxSize && eldest.hasNext()) {
+      eldest.next();
+      eldest.remove();
+    }
+  }
+
+  private static boolean isJar(File element) {
+    return element.isFile() && element.getName().toLowerCase().endsWith(".jar");
+  }
+
+  private static Map<String, Set<String>> unmodifiable(Map<String, Set<String>> services) {
+    Map<String, Set<String>> copy = new HashMap<>();
+    services.forEach(
+        (service, impls) -> copy.put(service, Collections.unmodifiableSet(new TreeSet<>(impls))));
+    return Collections.unmodifiableMap(copy);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Generates and renders the loaders of a compilation, in parallel on a bounded fork-join pool or
+ * sequentially on the calling thread when the parallelism is 1.
+ *
+ * <p>The generators must only use JavaPoet and data already resolved from the compiler model, the
+ * javac model and the Filer are not thread safe. The sources are returned in the order of the
+ * generators, so that the written output does not depend on the scheduling.
+ */
+class SourceRenderer {
+
+  private final int parallelism;
+
+  /** @param parallelism the number of rendering threads, {@code 1} renders sequentially */
+  SourceRenderer(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  List<GeneratedSource> render(List<Supplier<List<GeneratedSource>>> generators) {
+    if (parallelism == 1 || generators.size() < 2) {
+      return generators.stream()
+          .flatMap(generator -> generator.get().stream())
+          .collect(Collectors.toList());
+    }
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      // a parallel stream started from a pool task runs on that pool instead of the common pool
+      return pool.submit(
+              () ->
+                  generators.parallelStream()
+                      .flatMap(generator -> generator.get().stream())
+                      .collect(Collectors.toList()))
+          .get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while rendering the service loaders", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.util.Elements;
+
+/**
+ * Reads the service entries declared by the current compilation, from the {@code META-INF/services}
+ * files of its output and source directories and from the types annotated with
+ * {@code @AutoService}, without scanning the classpath.
+ */
+class SourceServices {
+
+  static final String AUTO_SERVICE = "com.google.auto.service.AutoService";
+
+  private SourceServices() {}
+
+  /**
+   * Reads the {@code META-INF/services} files of each directory, missing directories are skipped.
+   *
+   * @param invalidEntries receives a message per malformed entry, the entry is skipped
+   */
+  static Map<String, Set<String>> fromDirectories(
+      Collection<File> directories,
+      Predicate<String> serviceFilter,
+      Consumer<String> invalidEntries)
+      throws IOException {
+    Map<String, Set<String>> services = new HashMap<>();
+    for (File directory : directories) {
+      Path servicesDirectory = directory.toPath().resolve(ServiceScanner.SERVICES_PATH);
+      if (!Files.isDirectory(servicesDirectory)) {
+        continue;
+      }
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(servicesDirectory)) {
+        for (Path file : files) {
+          String serviceName = file.getFileName().toString();
+          if (!Files.isRegularFile(file) || !serviceFilter.test(serviceName)) {
+            continue;
+          }
+          try (InputStream content = Files.newInputStream(file)) {
+            ServiceFileParser.parse(
+                content,
+                impl -> services.computeIfAbsent(serviceName, key -> new TreeSet<>()).add(impl),
+                entry ->
+                    invalidEntries.accept(
+                        ServiceScanner.invalidEntry(
+                            entry, ServiceScanner.SERVICES_PATH + "/" + serviceName, directory)));
+          }
+        }
+      }
+    }
+    return services;
+  }
+
+  /**
+   * Reads the services of the types annotated with {@code @AutoService}, implementations are
+   * recorded by binary name like in a services file.
+   */
+  static Map<String, Set<String>> fromAnnotatedElements(
+      Collection<? extends Element> elements,
+      Elements elementUtils,
+      Predicate<String> serviceFilter) {
+    Map<String, Set<String>> services = new HashMap<>();
+    for (Element element : elements) {
+      if (!(element instanceof TypeElement)) {
+        continue;
+      }
+      String impl = elementUtils.getBinaryName((TypeElement) element).toString();
+      for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+        TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+        if (!annotationType.getQualifiedName().contentEquals(AUTO_SERVICE)) {
+          continue;
+        }
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value :
+            annotation.getElementValues().entrySet()) {
+          if (value.getKey().getSimpleName().contentEquals("value")) {
+            for (DeclaredType service : serviceTypes(value.getValue())) {
+              String serviceName =
+                  elementUtils.getBinaryName((TypeElement) service.asElement()).toString();
+              if (serviceFilter.test(serviceName)) {
+                services.computeIfAbsent(serviceName, key -> new TreeSet<>()).add(impl);
+              }
+            }
+          }
+        }
+      }
+    }
+    return services;
+  }
+
+  private static Collection<DeclaredType> serviceTypes(AnnotationValue value) {
+    Collection<DeclaredType> types = new ArrayList<>();
+    Object content = value.getValue();
+    if (content instanceof DeclaredType) {
+      types.add((DeclaredType) content);
+    } else if (content instanceof Collection) {
+      for (Object item : (Collection<?>) content) {
+        types.addAll(serviceTypes((AnnotationValue) item));
+      }
+    }
+    return types;
+  }
+}
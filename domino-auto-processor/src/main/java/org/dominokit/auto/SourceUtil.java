@@ -28,6 +28,7 @@ import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
 import javax.tools.Diagnostic;
@@ -130,6 +131,19 @@ public class SourceUtil {
             typeMirror);
   }
 
+  /**
+   * isAssignableFrom. checks if a specific {@link TypeMirror} is assignable from a specific {@link
+   * TypeElement}, generic types are compared by their erasure.
+   *
+   * @param typeMirror a {@link javax.lang.model.type.TypeMirror} object.
+   * @param targetElement a {@link javax.lang.model.element.TypeElement} object.
+   * @return a boolean.
+   */
+  public boolean isAssignableFrom(TypeMirror typeMirror, TypeElement targetElement) {
+    return env.types()
+        .isAssignable(env.types().erasure(targetElement.asType()), env.types().erasure(typeMirror));
+  }
+
   public static void errorStackTrace(Messager messager, Exception e) {
     StringWriter out = new StringWriter();
     e.printStackTrace(new PrintWriter(out));
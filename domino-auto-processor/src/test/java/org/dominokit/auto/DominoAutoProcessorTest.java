@@ -16,13 +16,493 @@
 package org.dominokit.auto;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.tools.Diagnostic;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class DominoAutoProcessorTest {
 
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void generatedLoadersCanBeImportedInTheSameCompilation() throws Exception {
+    TestCompiler compiler =
+        new TestCompiler(temp.getRoot().toPath())
+            .source(
+                "com.example.app.package-info",
+                "@org.dominokit.auto.DominoAuto(include = \"com.example\")\n"
+                    + "package com.example.app;\n")
+            .source("com.example.Service", "package com.example;\npublic interface Service {}\n")
+            .source(
+                "com.example.Impl",
+                "package com.example;\npublic class Impl implements Service {}\n")
+            .source(
+                "com.example.app.App",
+                "package com.example.app;\n"
+                    + "import com.example.Service_ServiceLoader;\n"
+                    + "public class App {\n"
+                    + "  Object services = Service_ServiceLoader.load();\n"
+                    + "}\n")
+            .service("com.example.Service", "com.example.Impl")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+  }
+
+  @Test
+  public void registryDelegatesKeepTheLoaderApi() throws Exception {
+    TestCompiler compiler =
+        new TestCompiler(temp.getRoot().toPath())
+            .source(
+                "com.example.app.package-info",
+                "@org.dominokit.auto.DominoAuto(include = \"com.example\")\n"
+                    + "package com.example.app;\n")
+            .source("com.example.Service", "package com.example;\npublic interface Service {}\n")
+            .source(
+                "com.example.Impl",
+                "package com.example;\n"
+                    + "@org.dominokit.auto.ServiceKey(\"impl\")\n"
+                    + "public class Impl implements Service {}\n")
+            .source(
+                "com.example.app.App",
+                "package com.example.app;\n"
+                    + "import com.example.*;\n"
+                    + "public class App {\n"
+                    + "  void use() {\n"
+                    + "    Service_ServiceLoader.load();\n"
+                    + "    Service_ServiceLoader.loadCached();\n"
+                    + "    Service_ServiceLoader.forEach(service -> {});\n"
+                    + "    Service_ServiceLoader.providers();\n"
+                    + "    Service_ServiceLoader.stream();\n"
+                    + "    Service_ServiceLoader.findFirst();\n"
+                    + "    Service_ServiceLoader.findByType(Impl.class);\n"
+                    + "    Service_ServiceLoader.get(\"impl\");\n"
+                    + "    Service_ServiceLoader.initAll(Runnable::run, service -> {});\n"
+                    + "    DominoAutoRegistry.initAllService(Runnable::run, service -> {});\n"
+                    + "  }\n"
+                    + "}\n")
+            .service("com.example.Service", "com.example.Impl")
+            .option(DominoAutoProcessor.DOMINO_AUTO_REGISTRY_NAME, "com.example.DominoAutoRegistry")
+            .option(DominoAutoProcessor.DOMINO_AUTO_REGISTRY_DELEGATES, "true")
+            .option(DominoAutoProcessor.DOMINO_AUTO_INIT_ALL, "com.example")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+  }
+
+  @Test
+  public void warnsAboutServiceEntriesWithEmbeddedWhitespace() throws Exception {
+    TestCompiler compiler =
+        new TestCompiler(temp.getRoot().toPath())
+            .source(
+                "com.example.app.package-info",
+                "@org.dominokit.auto.DominoAuto(include = \"com.example\")\n"
+                    + "package com.example.app;\n")
+            .source("com.example.Service", "package com.example;\npublic interface Service {}\n")
+            .source(
+                "com.example.Impl",
+                "package com.example;\npublic class Impl implements Service {}\n")
+            .service("com.example.Service", "com.example.Impl", "com.example.Impl Extra")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    List<String> warnings = compiler.messages(Diagnostic.Kind.WARNING);
+    assertTrue(
+        warnings.toString(),
+        warnings.stream()
+            .anyMatch(
+                warning ->
+                    warning.startsWith("Skipping invalid entry [com.example.Impl Extra]")
+                        && warning.contains("META-INF/services/com.example.Service")));
+    assertFalse(compiler.generated("com.example.Service_ServiceLoader").contains("ImplExtra"));
+  }
+
+  @Test
+  public void sharesSingletonsBetweenTheLoadersOfTheirServices() throws Exception {
+    TestCompiler compiler =
+        new TestCompiler(temp.getRoot().toPath())
+            .source(
+                "com.example.app.package-info",
+                "@org.dominokit.auto.DominoAuto(include = \"com.example\")\n"
+                    + "package com.example.app;\n")
+            .source("com.example.First", "package com.example;\npublic interface First {}\n")
+            .source("com.example.Second", "package com.example;\npublic interface Second {}\n")
+            .source(
+                "com.other.Impl",
+                "package com.other;\n"
+                    + "@org.dominokit.auto.ServiceScope\n"
+                    + "public class Impl implements com.example.First, com.example.Second {}\n")
+            .service("com.example.First", "com.other.Impl")
+            .service("com.example.Second", "com.other.Impl")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertTrue(
+        compiler
+            .generated("com.example.First_ServiceLoader")
+            .contains("First_ServiceLoader_Impl_Singleton.INSTANCE"));
+    assertTrue(
+        compiler
+            .generated("com.example.Second_ServiceLoader")
+            .contains("First_ServiceLoader_Impl_Singleton.INSTANCE"));
+    // placed next to the loaders of this compilation, not in the package of the implementation
+    assertTrue(compiler.isGenerated("com.example.First_ServiceLoader_Impl_Singleton"));
+    assertFalse(compiler.isGenerated("com.other.Impl_Singleton"));
+  }
+
+  @Test
+  public void placesTheSingletonsOfRegistryServicesNextToTheRegistry() throws Exception {
+    TestCompiler compiler =
+        new TestCompiler(temp.getRoot().toPath())
+            .source(
+                "com.example.app.package-info",
+                "@org.dominokit.auto.DominoAuto(include = \"com.example\")\n"
+                    + "package com.example.app;\n")
+            .source("com.example.First", "package com.example;\npublic interface First {}\n")
+            .source(
+                "com.example.Impl",
+                "package com.example;\n"
+                    + "@org.dominokit.auto.ServiceScope\n"
+                    + "public class Impl implements First {}\n")
+            .service("com.example.First", "com.example.Impl")
+            .option(DominoAutoProcessor.DOMINO_AUTO_REGISTRY, "true")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertTrue(compiler.isGenerated("com.example.app.DominoAutoRegistry_Impl_Singleton"));
+  }
+
+  @Test
+  public void writesTheBuildReportWithoutPerEntryWarnings() throws Exception {
+    TestCompiler compiler =
+        new TestCompiler(temp.getRoot().toPath())
+            .source(
+                "com.example.app.package-info",
+                "@org.dominokit.auto.DominoAuto(include = \"com.example\")\n"
+                    + "package com.example.app;\n")
+            .source("com.example.Service", "package com.example;\npublic interface Service {}\n")
+            .source(
+                "com.example.Impl",
+                "package com.example;\npublic class Impl implements Service {}\n")
+            .service("com.example.Service", "com.example.Impl")
+            .option(DominoAutoProcessor.DOMINO_AUTO_REPORT, "true")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertTrue(compiler.messages(Diagnostic.Kind.WARNING).isEmpty());
+    assertFalse(
+        compiler.messages(Diagnostic.Kind.NOTE).stream()
+            .anyMatch(message -> message.contains("Adding service entry")));
+    assertTrue(
+        compiler.messages(Diagnostic.Kind.NOTE).stream()
+            .anyMatch(message -> message.startsWith("domino-auto : 1 services")));
+
+    Path report = temp.getRoot().toPath().resolve("out").resolve(DominoAutoProcessor.REPORT_FILE);
+    String json = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+    assertTrue(json, json.contains("\"version\": 1"));
+    assertTrue(json, json.contains("\"loadersWritten\": 1"));
+    assertTrue(json, json.contains("\"write\": "));
+  }
+
+  @Test
+  public void scansOnceAndWritesEachLoaderOnceAcrossRounds() throws Exception {
+    // the generated loaders start a second round, and a third, final, one follows
+    TestCompiler compiler =
+        jarsCompiler()
+            .option(DominoAutoProcessor.DOMINO_AUTO_REPORT, "true")
+            .option(DominoAutoProcessor.DOMINO_AUTO_SKIP_UNCHANGED, "false")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertTrue(
+        compiler.messages(Diagnostic.Kind.WARNING).toString(),
+        compiler.messages(Diagnostic.Kind.WARNING).isEmpty());
+    String json = compiler.output(DominoAutoProcessor.REPORT_FILE);
+    assertTrue(json, json.contains("\"rounds\": 3"));
+    // the library directory and the two jars, once
+    assertTrue(json, json.contains("\"classpathElementsScanned\": 3"));
+    assertTrue(json, json.contains("\"loadersWritten\": 1"));
+  }
+
+  @Test
+  public void skipsRewritingUnchangedLoaders() throws Exception {
+    TestCompiler compiler =
+        jarsCompiler().option(DominoAutoProcessor.DOMINO_AUTO_REPORT, "true").compile();
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    Path loader = generatedLoader();
+    FileTime written = FileTime.fromMillis(1_000_000_000_000L);
+    Files.setLastModifiedTime(loader, written);
+
+    compiler.compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertEquals(written, Files.getLastModifiedTime(loader));
+    String json = compiler.output(DominoAutoProcessor.REPORT_FILE);
+    assertTrue(json, json.contains("\"loadersUnchanged\": 1"));
+    assertFalse(json, json.contains("\"loadersWritten\""));
+  }
+
+  @Test
+  public void rewritesLoadersWhoseImplementationsChanged() throws Exception {
+    TestCompiler compiler =
+        jarsCompiler().option(DominoAutoProcessor.DOMINO_AUTO_REPORT, "true").compile();
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    Path loader = generatedLoader();
+    FileTime written = FileTime.fromMillis(1_000_000_000_000L);
+    Files.setLastModifiedTime(loader, written);
+
+    compiler.libraryJar("rejected-services.jar", "com.example.Service", "com.example.Accepted");
+    compiler.compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertNotEquals(written, Files.getLastModifiedTime(loader));
+    assertFalse(compiler.generated("com.example.Service_ServiceLoader").contains("Rejected"));
+    String json = compiler.output(DominoAutoProcessor.REPORT_FILE);
+    assertTrue(json, json.contains("\"loadersWritten\": 1"));
+  }
+
+  @Test
+  public void reusesTheScanCacheOfThePreviousCompilation() throws Exception {
+    TestCompiler compiler =
+        jarsCompiler()
+            .option(DominoAutoProcessor.DOMINO_AUTO_SCAN_CACHE, "true")
+            .option(DominoAutoProcessor.DOMINO_AUTO_REPORT, "true")
+            .compile();
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertTrue(compiler.output(DominoAutoProcessor.REPORT_FILE).contains("\"scanCacheMisses\": 3"));
+
+    compiler.compile();
+    String json = compiler.output(DominoAutoProcessor.REPORT_FILE);
+    assertTrue(json, json.contains("\"scanCacheHits\": 3"));
+    assertTrue(json, json.contains("\"scanCacheMisses\": 0"));
+    assertFalse(json, json.contains("\"classpathElementsScanned\""));
+
+    compiler.service("com.example.Service", "com.example.Accepted").compile();
+    json = compiler.output(DominoAutoProcessor.REPORT_FILE);
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertTrue(json, json.contains("\"scanCacheHits\": 2"));
+    assertTrue(json, json.contains("\"classpathElementsScanned\": 1"));
+  }
+
+  @Test
+  public void rescansOnlyTheChangedJarsOfAnExplicitClasspath() throws Exception {
+    TestCompiler compiler =
+        jarsCompiler()
+            .option(DominoAutoProcessor.DOMINO_AUTO_SCAN_CACHE, "true")
+            .option(DominoAutoProcessor.DOMINO_AUTO_REPORT, "true")
+            .compile();
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+
+    compiler
+        .libraryJar(
+            "rejected-services.jar",
+            "com.example.Service",
+            "com.example.Rejected",
+            "com.example.Accepted")
+        .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    String json = compiler.output(DominoAutoProcessor.REPORT_FILE);
+    assertTrue(json, json.contains("\"classpathElementsScanned\": 1"));
+    assertTrue(json, json.contains("\"scanCacheHits\": 2"));
+  }
+
+  @Test
+  public void countsTheAcceptedServicesFilesOfTheSharedScanCache() throws Exception {
+    TestCompiler compiler =
+        jarsCompiler()
+            .libraryJar("other-services.jar", "org.other.Service", "org.other.Impl")
+            .option(DominoAutoProcessor.DOMINO_AUTO_SHARED_SCAN_CACHE, "true")
+            .option(DominoAutoProcessor.DOMINO_AUTO_REPORT, "true")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    String json = compiler.output(DominoAutoProcessor.REPORT_FILE);
+    assertTrue(json, json.contains("\"resourcesScanned\": 3"));
+    assertTrue(json, json.contains("\"resourcesAccepted\": 2"));
+    assertTrue(json, json.contains("\"resourcesRejected\": 1"));
+  }
+
+  @Test
+  public void discoversServicesDeclaredInTheCurrentCompilation() throws Exception {
+    TestCompiler compiler =
+        sourceDiscoveryCompiler(
+                "@org.dominokit.auto.DominoAuto(include = \"com.example\","
+                    + " discovery = org.dominokit.auto.DominoAuto.Discovery.SOURCES)\n")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertTrue(compiler.generated("com.example.Service_ServiceLoader").contains("new Impl()"));
+    assertTrue(
+        compiler.generated("com.example.Declared_ServiceLoader").contains("new DeclaredImpl()"));
+    assertFalse(compiler.isGenerated("com.example.Scanned_ServiceLoader"));
+    // the warning depends on the test JVM opening the javac internals, it is reported once
+    assertTrue(
+        compiler.messages(Diagnostic.Kind.WARNING).stream()
+                .filter(message -> message.startsWith("Could not read the javac source path"))
+                .count()
+            <= 1);
+  }
+
+  @Test
+  public void discoveryOptionCombinesTheClasspathAndTheCurrentCompilation() throws Exception {
+    TestCompiler compiler =
+        sourceDiscoveryCompiler("@org.dominokit.auto.DominoAuto(include = \"com.example\")\n")
+            .option(DominoAutoProcessor.DOMINO_AUTO_DISCOVERY, "all")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertTrue(compiler.isGenerated("com.example.Service_ServiceLoader"));
+    assertTrue(compiler.isGenerated("com.example.Declared_ServiceLoader"));
+    assertTrue(compiler.isGenerated("com.example.Scanned_ServiceLoader"));
+  }
+
+  @Test
+  public void writesTheIndexOfTheServicesProvidedByALibrary() throws Exception {
+    TestCompiler compiler =
+        new TestCompiler(temp.getRoot().toPath())
+            .source("com.example.Service", "package com.example;\npublic interface Service {}\n")
+            .source(
+                "com.example.Impl",
+                "package com.example;\n"
+                    + "@com.google.auto.service.AutoService(Service.class)\n"
+                    + "public class Impl implements Service {}\n")
+            .classOutputService("com.example.Declared", "com.example.DeclaredImpl")
+            .option(DominoAutoProcessor.DOMINO_AUTO_WRITE_INDEX, "true")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertEquals(
+        "domino-auto-index 1\n"
+            + "com.example.Declared com.example.DeclaredImpl\n"
+            + "com.example.Service com.example.Impl\n",
+        compiler.output(ServiceIndex.INDEX_PATH));
+  }
+
+  @Test
+  public void readsTheIndexInsteadOfTheServicesFilesOfAClasspathElement() throws Exception {
+    TestCompiler compiler =
+        indexCompiler(
+                "domino-auto-index 1\n"
+                    + "com.example.Other com.example.OtherImpl\n"
+                    + "com.example.Service com.example.Impl\n")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertTrue(compiler.generated("com.example.Service_ServiceLoader").contains("new Impl()"));
+    // only listed by the index
+    assertTrue(compiler.generated("com.example.Other_ServiceLoader").contains("new OtherImpl()"));
+  }
+
+  @Test
+  public void scansTheElementsWithAnIndexMissingSomeOfTheirServicesFiles() throws Exception {
+    // a shaded jar merging the services files of several libraries, keeping one of their indexes
+    TestCompiler compiler =
+        indexCompiler("domino-auto-index 1\ncom.example.Other com.example.OtherImpl\n").compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertTrue(compiler.generated("com.example.Service_ServiceLoader").contains("new Impl()"));
+    assertFalse(compiler.isGenerated("com.example.Other_ServiceLoader"));
+  }
+
+  @Test
+  public void scansOnlyTheAcceptedJars() throws Exception {
+    String loader =
+        jarsCompiler()
+            .option(DominoAutoProcessor.DOMINO_AUTO_ACCEPT_JARS, "accepted-*.jar")
+            .option(DominoAutoProcessor.DOMINO_AUTO_SCAN_THREADS, "2")
+            .compile()
+            .generated("com.example.Service_ServiceLoader");
+
+    assertTrue(loader, loader.contains("new Accepted()"));
+    assertFalse(loader, loader.contains("new Rejected()"));
+  }
+
+  @Test
+  public void skipsTheRejectedJars() throws Exception {
+    String loader =
+        jarsCompiler()
+            .option(DominoAutoProcessor.DOMINO_AUTO_REJECT_JARS, "rejected-*.jar")
+            .option(DominoAutoProcessor.DOMINO_AUTO_SCAN_THREADS, "1")
+            .compile()
+            .generated("com.example.Service_ServiceLoader");
+
+    assertTrue(loader, loader.contains("new Accepted()"));
+    assertFalse(loader, loader.contains("new Rejected()"));
+  }
+
+  private Path generatedLoader() {
+    return temp.getRoot().toPath().resolve("generated/com/example/Service_ServiceLoader.java");
+  }
+
+  /** A classpath element holding the services file of {@code Service} and the given index. */
+  private TestCompiler indexCompiler(String index) throws Exception {
+    return new TestCompiler(temp.getRoot().toPath())
+        .source(
+            "com.example.app.package-info",
+            "@org.dominokit.auto.DominoAuto(include = \"com.example\")\n"
+                + "package com.example.app;\n")
+        .source("com.example.Service", "package com.example;\npublic interface Service {}\n")
+        .source(
+            "com.example.Impl", "package com.example;\npublic class Impl implements Service {}\n")
+        .source("com.example.Other", "package com.example;\npublic interface Other {}\n")
+        .source(
+            "com.example.OtherImpl",
+            "package com.example;\npublic class OtherImpl implements Other {}\n")
+        .libraryResource(ServiceIndex.INDEX_PATH, index)
+        .service("com.example.Service", "com.example.Impl");
+  }
+
+  private TestCompiler jarsCompiler() throws Exception {
+    return new TestCompiler(temp.getRoot().toPath())
+        .source(
+            "com.example.app.package-info",
+            "@org.dominokit.auto.DominoAuto(include = \"com.example\")\n"
+                + "package com.example.app;\n")
+        .source("com.example.Service", "package com.example;\npublic interface Service {}\n")
+        .source(
+            "com.example.Accepted",
+            "package com.example;\npublic class Accepted implements Service {}\n")
+        .source(
+            "com.example.Rejected",
+            "package com.example;\npublic class Rejected implements Service {}\n")
+        .libraryJar("accepted-services.jar", "com.example.Service", "com.example.Accepted")
+        .libraryJar("rejected-services.jar", "com.example.Service", "com.example.Rejected");
+  }
+
+  private TestCompiler sourceDiscoveryCompiler(String dominoAuto) throws Exception {
+    return new TestCompiler(temp.getRoot().toPath())
+        .source("com.example.app.package-info", dominoAuto + "package com.example.app;\n")
+        .source("com.example.Service", "package com.example;\npublic interface Service {}\n")
+        .source(
+            "com.example.Impl",
+            "package com.example;\n"
+                + "@com.google.auto.service.AutoService(Service.class)\n"
+                + "public class Impl implements Service {}\n")
+        .source("com.example.Declared", "package com.example;\npublic interface Declared {}\n")
+        .source(
+            "com.example.DeclaredImpl",
+            "package com.example;\npublic class DeclaredImpl implements Declared {}\n")
+        .classOutputService("com.example.Declared", "com.example.DeclaredImpl")
+        .source("com.example.Scanned", "package com.example;\npublic interface Scanned {}\n")
+        .source(
+            "com.example.ScannedImpl",
+            "package com.example;\npublic class ScannedImpl implements Scanned {}\n")
+        .service("com.example.Scanned", "com.example.ScannedImpl");
+  }
+
   @Test
   public void prefersSystemPropertyOverEnvironmentAndProcessorOption() {
     Set<String> includes =
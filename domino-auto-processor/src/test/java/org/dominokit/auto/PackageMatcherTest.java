@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+public class PackageMatcherTest {
+
+  @Test
+  public void matchesWholePackageSegmentsOnly() {
+    PackageMatcher matcher = PackageMatcher.compile(List.of("com.example.svc"), List.of());
+
+    assertTrue(matcher.matches("com.example.svc.Service"));
+    assertTrue(matcher.matches("com.example.svc.sub.Service"));
+    assertFalse(matcher.matches("com.example.svcinternal.Service"));
+    assertFalse(matcher.matches("com.example.Service"));
+  }
+
+  @Test
+  public void longestMatchDecides() {
+    PackageMatcher matcher =
+        PackageMatcher.compile(
+            List.of("com.example", "com.example.internal.api"), List.of("com.example.internal"));
+
+    assertTrue(matcher.matches("com.example.Service"));
+    assertFalse(matcher.matches("com.example.internal.Service"));
+    assertTrue(matcher.matches("com.example.internal.api.Service"));
+  }
+
+  @Test
+  public void excludeWinsOverIncludeOfSameLength() {
+    PackageMatcher matcher =
+        PackageMatcher.compile(List.of("com.example"), List.of("com.example", "com.*"));
+
+    assertFalse(matcher.matches("com.example.Service"));
+  }
+
+  @Test
+  public void supportsSingleAndMultiSegmentWildcards() {
+    PackageMatcher matcher =
+        PackageMatcher.compile(List.of("com.*.services", "org.**.spi"), List.of());
+
+    assertTrue(matcher.matches("com.example.services.Service"));
+    assertFalse(matcher.matches("com.example.nested.services.Service"));
+    assertTrue(matcher.matches("org.spi.Service"));
+    assertTrue(matcher.matches("org.example.nested.spi.Service"));
+    assertFalse(matcher.matches("org.example.Service"));
+  }
+
+  @Test
+  public void matchesNothingWithoutIncludes() {
+    PackageMatcher matcher = PackageMatcher.compile(List.of(), List.of("com.example"));
+
+    assertFalse(matcher.matches("com.example.Service"));
+    assertFalse(matcher.matches("org.example.Service"));
+  }
+}
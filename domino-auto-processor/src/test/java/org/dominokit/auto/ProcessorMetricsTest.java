@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ProcessorMetricsTest {
+
+  @Test
+  public void accumulatesCountersAndRendersThemInTheReport() {
+    ProcessorMetrics metrics = new ProcessorMetrics();
+    metrics.count(ProcessorMetrics.SERVICES, 2);
+    metrics.count(ProcessorMetrics.SERVICES, 1);
+    metrics.count(ProcessorMetrics.LOADERS_WRITTEN, 3);
+    metrics.time(ProcessorMetrics.WRITE, System.nanoTime());
+
+    assertEquals(3, metrics.counter(ProcessorMetrics.SERVICES));
+    assertEquals(0, metrics.counter(ProcessorMetrics.IMPLEMENTATIONS));
+
+    String json = metrics.toJson();
+    assertTrue(json, json.startsWith("{\n  \"version\": 1,\n"));
+    assertTrue(json, json.contains("\"services\": 3"));
+    assertTrue(json, json.contains("\"loadersWritten\": 3"));
+    assertTrue(json, json.contains("\"configuration\": 0.000"));
+
+    String summary = metrics.summary();
+    assertTrue(summary, summary.startsWith("domino-auto : 3 services, 0 implementations"));
+    assertTrue(summary, summary.contains("write "));
+  }
+}
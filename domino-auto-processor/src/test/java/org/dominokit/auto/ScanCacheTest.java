@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScanCacheTest {
+
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void reusesEntriesWithUnchangedFingerprints() throws Exception {
+    Path file = temp.getRoot().toPath().resolve("scan.cache");
+    String signature = ScanCache.configSignature(Set.of("com.example"), Set.of());
+
+    ScanCache cache = ScanCache.empty(file, signature);
+    cache.put(
+        "/libs/a.jar",
+        "jar:10:20",
+        Map.of("com.example.Service", Set.of("com.example.A", "com.example.B")));
+    cache.save();
+
+    ScanCache reloaded = ScanCache.load(file, signature);
+    assertEquals(
+        Map.of("com.example.Service", Set.of("com.example.A", "com.example.B")),
+        reloaded.get("/libs/a.jar", "jar:10:20").get());
+    assertFalse(reloaded.get("/libs/a.jar", "jar:10:21").isPresent());
+    assertFalse(reloaded.get("/libs/b.jar", "jar:10:20").isPresent());
+    assertEquals(1, reloaded.hits());
+    assertEquals(2, reloaded.misses());
+  }
+
+  @Test
+  public void discardsCacheWrittenWithDifferentConfiguration() throws Exception {
+    Path file = temp.getRoot().toPath().resolve("scan.cache");
+    ScanCache cache =
+        ScanCache.empty(file, ScanCache.configSignature(Set.of("com.example"), Set.of()));
+    cache.put("/libs/a.jar", "jar:10:20", Map.of("com.example.Service", Set.of("com.example.A")));
+    cache.save();
+
+    ScanCache reloaded =
+        ScanCache.load(file, ScanCache.configSignature(Set.of("com.example"), Set.of("com.x")));
+    assertFalse(reloaded.get("/libs/a.jar", "jar:10:20").isPresent());
+  }
+
+  @Test
+  public void retainsOnlyCurrentClasspathElements() throws Exception {
+    Path file = temp.getRoot().toPath().resolve("scan.cache");
+    ScanCache cache = ScanCache.empty(file, "sig");
+    cache.put("/libs/a.jar", "jar:1:1", Map.of());
+    cache.put("/libs/b.jar", "jar:1:1", Map.of());
+    cache.retain(List.of("/libs/b.jar"));
+    cache.save();
+
+    ScanCache reloaded = ScanCache.load(file, "sig");
+    assertFalse(reloaded.get("/libs/a.jar", "jar:1:1").isPresent());
+    assertTrue(reloaded.get("/libs/b.jar", "jar:1:1").isPresent());
+  }
+
+  @Test
+  public void replacesTheCacheFileWithoutLeavingTemporaryFiles() throws Exception {
+    Path file = temp.getRoot().toPath().resolve("scan.cache");
+    ScanCache first = ScanCache.empty(file, "sig");
+    first.put("/libs/a.jar", "jar:1:1", Map.of());
+    first.save();
+    ScanCache second = ScanCache.empty(file, "sig");
+    second.put("/libs/b.jar", "jar:1:1", Map.of());
+    second.save();
+
+    ScanCache reloaded = ScanCache.load(file, "sig");
+    assertFalse(reloaded.get("/libs/a.jar", "jar:1:1").isPresent());
+    assertTrue(reloaded.get("/libs/b.jar", "jar:1:1").isPresent());
+    try (Stream<Path> files = Files.list(temp.getRoot().toPath())) {
+      assertEquals(List.of(file), files.collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void directoryFingerprintFollowsServiceFileContent() throws Exception {
+    File classes = temp.newFolder("classes");
+    Path services = classes.toPath().resolve("META-INF/services");
+    Files.createDirectories(services);
+    Path serviceFile = services.resolve("com.example.Service");
+    Files.write(serviceFile, "com.example.A\n".getBytes(StandardCharsets.UTF_8));
+
+    String before = ScanCache.fingerprint(classes);
+    assertEquals(before, ScanCache.fingerprint(classes));
+
+    Files.write(serviceFile, "com.example.B\n".getBytes(StandardCharsets.UTF_8));
+    assertNotEquals(before, ScanCache.fingerprint(classes));
+  }
+
+  @Test
+  public void directoryFingerprintFollowsTheServiceIndex() throws Exception {
+    File classes = temp.newFolder("classes");
+    String none = ScanCache.fingerprint(classes);
+
+    Path index = classes.toPath().resolve(ServiceIndex.INDEX_PATH);
+    Files.createDirectories(index.getParent());
+    Files.write(index, "com.example.Service=com.example.A\n".getBytes(StandardCharsets.UTF_8));
+    String before = ScanCache.fingerprint(classes);
+    assertNotEquals(none, before);
+    assertEquals(before, ScanCache.fingerprint(classes));
+
+    Files.write(index, "com.example.Service=com.example.B\n".getBytes(StandardCharsets.UTF_8));
+    assertNotEquals(before, ScanCache.fingerprint(classes));
+  }
+}
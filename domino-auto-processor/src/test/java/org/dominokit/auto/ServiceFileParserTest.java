@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class ServiceFileParserTest {
+
+  @Test
+  public void ignoresCommentsBlankLinesAndSurroundingWhitespace() throws Exception {
+    assertEquals(
+        List.of("com.example.A", "com.example.B", "com.example.C"),
+        parse(
+            "# header comment\n"
+                + "com.example.A\n"
+                + "\n"
+                + "   com.example.B\t # trailing comment\n"
+                + "#com.example.Disabled\n"
+                + "com.example.C"));
+  }
+
+  @Test
+  public void supportsWindowsLineEndingsAndByteOrderMark() throws Exception {
+    assertEquals(
+        List.of("com.example.A", "com.example.B"),
+        parse("\uFEFFcom.example.A\r\ncom.example.B\r\n"));
+  }
+
+  @Test
+  public void decodesNonAsciiNames() throws Exception {
+    assertEquals(List.of("com.example.Ünïcode"), parse("com.example.Ünïcode\n"));
+  }
+
+  @Test
+  public void reportsNamesWithEmbeddedWhitespace() throws Exception {
+    List<String> impls = new ArrayList<>();
+    List<String> invalid = new ArrayList<>();
+    ServiceFileParser.parse(
+        new ByteArrayInputStream(
+            " com.Foo Bar  # comment\ncom.example.A\ncom.example.\tB\n"
+                .getBytes(StandardCharsets.UTF_8)),
+        impls::add,
+        invalid::add);
+
+    assertEquals(List.of("com.example.A"), impls);
+    assertEquals(List.of("com.Foo Bar", "com.example.\tB"), invalid);
+  }
+
+  private static List<String> parse(String content) throws Exception {
+    List<String> impls = new ArrayList<>();
+    ServiceFileParser.parse(
+        new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)),
+        impls::add,
+        entry -> fail("Unexpected invalid entry [" + entry + "]"));
+    return impls;
+  }
+}
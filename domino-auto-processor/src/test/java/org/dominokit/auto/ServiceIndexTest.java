@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Test;
+
+public class ServiceIndexTest {
+
+  @Test
+  public void writesSortedServicesUnderAVersionHeader() {
+    Map<String, Set<String>> services = new HashMap<>();
+    services.put("com.example.B", new HashSet<>(Arrays.asList("com.example.B2", "com.example.B1")));
+    services.put("com.example.A", new HashSet<>(Arrays.asList("com.example.A$Nested")));
+    services.put("com.example.Empty", new HashSet<>());
+
+    assertEquals(
+        "domino-auto-index 1\n"
+            + "com.example.A com.example.A$Nested\n"
+            + "com.example.B com.example.B1 com.example.B2\n",
+        ServiceIndex.write(services));
+  }
+
+  @Test
+  public void readsTheServicesAcceptedByTheFilter() throws IOException {
+    Map<String, Set<String>> services =
+        ServiceIndex.read(
+                content(
+                    "domino-auto-index 1\n"
+                        + "com.example.A com.example.A1 com.example.A2\n"
+                        + "\n"
+                        + "org.other.B org.other.B1\n"),
+                service -> service.startsWith("com.example"))
+            .get();
+
+    assertEquals(1, services.size());
+    assertEquals(
+        new TreeSet<>(Arrays.asList("com.example.A1", "com.example.A2")),
+        services.get("com.example.A"));
+  }
+
+  @Test
+  public void ignoresIndexesOfAnotherVersion() throws IOException {
+    assertFalse(
+        ServiceIndex.read(content("domino-auto-index 2\ncom.example.A com.example.A1\n"), s -> true)
+            .isPresent());
+  }
+
+  private static InputStream content(String index) {
+    return new ByteArrayInputStream(index.getBytes(StandardCharsets.UTF_8));
+  }
+}
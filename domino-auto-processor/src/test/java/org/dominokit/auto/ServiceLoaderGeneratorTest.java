@@ -0,0 +1,390 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.squareup.javapoet.ClassName;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Test;
+
+public class ServiceLoaderGeneratorTest {
+
+  @Test
+  public void generatesFreshInstancesLoader() {
+    assertContains(
+        generate(),
+        "public class Service_ServiceLoader {\n",
+        "  public static List<Service> load() {\n"
+            + "    List<Service> services = new ArrayList<>(2);\n"
+            + "    services.add(new A());\n"
+            + "    services.add(new B());\n"
+            + "    return services;\n"
+            + "  }\n");
+  }
+
+  @Test
+  public void generatesAllocationFreeForEach() {
+    assertContains(
+        generate(),
+        "  public static void forEach(Consumer<? super Service> consumer) {\n"
+            + "    consumer.accept(new A());\n"
+            + "    consumer.accept(new B());\n"
+            + "  }\n");
+  }
+
+  @Test
+  public void generatesCachedLoaderBackedByHolderClass() {
+    assertContains(
+        generate(),
+        "  public static List<Service> loadCached() {\n"
+            + "    return CachedServices.SERVICES;\n"
+            + "  }\n",
+        "  private static final class CachedServices {\n"
+            + "    private static final List<Service> SERVICES = Collections.unmodifiableList(load());\n"
+            + "  }\n");
+  }
+
+  @Test
+  public void generatesLazyProviders() {
+    assertContains(
+        generate(),
+        "    providers.add(ServiceProvider.of(A.class, () -> new A()));\n"
+            + "    providers.add(ServiceProvider.of(B.class, () -> new B()));\n",
+        "  public static Stream<ServiceProvider<Service>> stream() {\n"
+            + "    return providers().stream();\n"
+            + "  }\n",
+        "  public static Optional<Service> findFirst() {\n"
+            + "    return Optional.of(new A());\n"
+            + "  }\n",
+        "    if (type == B.class) {\n" + "      return Optional.of((T) new B());\n" + "    }\n");
+  }
+
+  @Test
+  public void stampsStableInputsHash() {
+    String first = generate();
+    String second = generate();
+    String other = generator().generate(service(impl("com.example", "A"))).toString();
+
+    assertEquals(first, second);
+    assertTrue(ServiceLoaderGenerator.inputsHashOf(first).isPresent());
+    assertEquals(
+        ServiceLoaderGenerator.inputsHashOf(first), ServiceLoaderGenerator.inputsHashOf(second));
+    assertNotEquals(
+        ServiceLoaderGenerator.inputsHashOf(first), ServiceLoaderGenerator.inputsHashOf(other));
+  }
+
+  @Test
+  public void generatesKeyedLookupSwitch() {
+    String source =
+        generator()
+            .generate(
+                service(
+                    keyed("com.example", "A", "a"),
+                    impl("com.example", "B"),
+                    keyed("com.example", "C", "c")))
+            .toString();
+    assertContains(
+        source,
+        "  public static Optional<Service> get(String key) {\n"
+            + "    switch (key) {\n"
+            + "      case \"a\":\n"
+            + "        return Optional.of(new A());\n"
+            + "      case \"c\":\n"
+            + "        return Optional.of(new C());\n"
+            + "      default:\n"
+            + "        return Optional.empty();\n"
+            + "    }\n"
+            + "  }\n");
+    assertFalse(generate().contains(" get(String key)"));
+  }
+
+  @Test
+  public void readsSingletonsFromTheirSharedHolder() {
+    ServiceImplementation singleton = singleton("com.example", "A");
+    ServiceLoaderGenerator generator = generator();
+    ClassName owner = ClassName.get("com.example", "Service_ServiceLoader");
+    generator.placeSingleton(singleton, owner);
+
+    assertContains(
+        generator.generate(service(singleton, impl("com.example", "B"))).toString(),
+        "    services.add(Service_ServiceLoader_A_Singleton.INSTANCE);\n"
+            + "    services.add(new B());\n",
+        "    providers.add(ServiceProvider.of(A.class, () -> Service_ServiceLoader_A_Singleton"
+            + ".INSTANCE));\n");
+    assertContains(
+        generator.generateSingleton(singleton).toString(),
+        "public final class Service_ServiceLoader_A_Singleton {\n"
+            + "  public static final A INSTANCE = new A();\n"
+            + "\n"
+            + "  private Service_ServiceLoader_A_Singleton() {\n"
+            + "  }\n"
+            + "}\n");
+  }
+
+  @Test
+  public void numbersTheSingletonHoldersWithTheSameName() {
+    ServiceLoaderGenerator generator = generator();
+    ClassName owner = ClassName.get("com.example", "Service_ServiceLoader");
+    ServiceImplementation first = singleton("com.a", "A");
+    ServiceImplementation second = singleton("com.b", "A");
+
+    assertEquals(
+        ClassName.get("com.example", "Service_ServiceLoader_A_Singleton"),
+        generator.placeSingleton(first, owner));
+    assertEquals(
+        ClassName.get("com.example", "Service_ServiceLoader_A2_Singleton"),
+        generator.placeSingleton(second, owner));
+    assertEquals(
+        ClassName.get("com.example", "Service_ServiceLoader_A_Singleton"),
+        generator.placeSingleton(first, ClassName.get("com.example", "Other_ServiceLoader")));
+  }
+
+  @Test
+  public void wrapsInstantiationsWithTimingWhenEnabled() {
+    String source = generate(GeneratorOptions.defaults().timing(true));
+    assertContains(
+        source,
+        "    services.add(DominoAutoTiming.time(\"com.example.Service\", \"com.example.A\", () -> new A()));\n",
+        "    consumer.accept(DominoAutoTiming.time(\"com.example.Service\", \"com.example.impl.B\", () -> new B()));\n");
+    assertFalse(generate().contains("DominoAutoTiming"));
+  }
+
+  @Test
+  public void initializesIndependentImplementationsLayerByLayer() {
+    ServiceImplementation dependent =
+        new ServiceImplementation(
+            "com.example.B",
+            ClassName.get("com.example", "B"),
+            null,
+            ServiceScope.Scope.PROTOTYPE,
+            List.of(ClassName.get("com.example", "A")));
+    String source =
+        new ServiceLoaderGenerator(
+                List.of(), GeneratorOptions.defaults().initAllServices(service -> true))
+            .generate(service(impl("com.example", "A"), dependent, impl("com.example", "C")))
+            .toString();
+    assertContains(
+        source,
+        "    CompletableFuture<Void> layers =\n"
+            + "        CompletableFuture.allOf(\n"
+            + "            CompletableFuture.runAsync(() -> initializer.accept(services.get(0)), executor),\n"
+            + "            CompletableFuture.runAsync(() -> initializer.accept(services.get(2)), executor));\n"
+            + "    layers =\n"
+            + "        layers.thenCompose(\n"
+            + "            ignored ->\n"
+            + "                CompletableFuture.allOf(\n"
+            + "                    CompletableFuture.runAsync(() -> initializer.accept(services.get(1)), executor)));\n"
+            + "    return layers.thenApply(ignored -> services);\n");
+    assertFalse(generate().contains("initAll"));
+  }
+
+  @Test
+  public void generatesRegistryWithThinDelegates() {
+    ServiceDefinition other =
+        new ServiceDefinition(
+            "com.other.Service",
+            ClassName.get("com.other", "Service"),
+            List.of(impl("com.other", "C")));
+    ServiceDefinition handler =
+        new ServiceDefinition(
+            "com.example.Handler",
+            ClassName.get("com.example", "Handler"),
+            List.of(impl("com.example", "D")));
+    List<GeneratedSource> files =
+        generator()
+            .generateRegistry(
+                ClassName.get("com.example", "DominoAutoRegistry"),
+                List.of(handler, service(impl("com.example", "A")), other),
+                true);
+
+    assertEquals(4, files.size());
+    assertContains(
+        files.get(0).toString(),
+        "public final class DominoAutoRegistry {\n",
+        "  public static List<Handler> loadHandler() {\n",
+        "  public static List<Service> loadComExampleService() {\n",
+        "  public static List<com.other.Service> loadComOtherService() {\n"
+            + "    List<com.other.Service> services = new ArrayList<>(1);\n"
+            + "    services.add(new C());\n");
+    assertContains(
+        files.get(0).toString(),
+        "  public static List<ServiceProvider<Handler>> providersHandler() {\n");
+    assertContains(
+        files.get(3).toString(),
+        "public class Service_ServiceLoader {\n"
+            + "  public static List<Service> load() {\n"
+            + "    return DominoAutoRegistry.loadComOtherService();\n"
+            + "  }\n",
+        "  public static List<Service> loadCached() {\n",
+        "  public static void forEach(Consumer<? super Service> consumer) {\n"
+            + "    load().forEach(consumer);\n",
+        "  public static List<ServiceProvider<Service>> providers() {\n"
+            + "    return DominoAutoRegistry.providersComOtherService();\n",
+        "  public static Stream<ServiceProvider<Service>> stream() {\n",
+        "    return providers.isEmpty() ? Optional.empty() : Optional.of(providers.get(0).get());\n",
+        "    for (ServiceProvider<Service> provider : providers()) {\n"
+            + "      if (provider.type() == type) {\n"
+            + "        return Optional.of((T) provider.get());\n");
+  }
+
+  @Test
+  public void generatesServicesFacadeOverLoadersAndRegistry() {
+    ServiceDefinition handler =
+        new ServiceDefinition(
+            "com.example.Handler",
+            ClassName.get("com.example", "Handler"),
+            List.of(impl("com.example", "D")));
+    String source =
+        generator()
+            .generateServices(
+                ClassName.get("com.example", "DominoServices"),
+                List.of(service(impl("com.example", "A"))),
+                Optional.of(ClassName.get("com.example", "DominoAutoRegistry")),
+                List.of(handler),
+                true)
+            .toString();
+
+    assertContains(
+        source,
+        "  @SuppressWarnings(\"unchecked\")\n"
+            + "  public static <S> List<S> load(Class<S> service) {\n"
+            + "    switch (service.getName()) {\n"
+            + "      case \"com.example.Handler\":\n"
+            + "        return (List<S>) DominoAutoRegistry.loadHandler();\n"
+            + "      case \"com.example.Service\":\n"
+            + "        return (List<S>) Service_ServiceLoader.load();\n"
+            + "      default:\n"
+            + "        return serviceLoader(service);\n"
+            + "    }\n"
+            + "  }\n",
+        "    ServiceLoader.load(service).forEach(services::add);\n");
+  }
+
+  @Test
+  public void servicesFacadeReturnsAnEmptyListWithoutFallback() {
+    String source =
+        generator()
+            .generateServices(
+                ClassName.get("com.example", "DominoServices"),
+                List.of(),
+                Optional.empty(),
+                List.of(),
+                false)
+            .toString();
+
+    assertContains(source, "      default:\n        return new ArrayList<>();\n");
+    assertFalse(source.contains("ServiceLoader"));
+  }
+
+  @Test
+  public void generatesLoadAsyncBehindOneSplitPointPerService() {
+    String source = generate(GeneratorOptions.defaults().asyncServices(service -> true));
+    assertContains(
+        source,
+        "  public static void loadAsync(AsyncServicesCallback<Service> callback) {\n"
+            + "    AsyncServicesJoin<Service> join = new AsyncServicesJoin<>(2, callback);\n"
+            + "    DominoAutoAsync.runAsync(\n"
+            + "        Service_ServiceLoader.class,\n"
+            + "        () -> {\n"
+            + "          join.load(0, () -> new A());\n"
+            + "          join.load(1, () -> new B());\n"
+            + "        },\n"
+            + "        join::onFailure);\n"
+            + "  }\n");
+  }
+
+  @Test
+  public void generatesGwtSplitPointPerImplementation() {
+    String source =
+        generate(
+            GeneratorOptions.defaults()
+                .asyncServices(service -> true)
+                .splitPoints(GeneratorOptions.SplitPoints.GWT2)
+                .asyncSplit(GeneratorOptions.AsyncSplit.IMPLEMENTATION));
+    assertContains(
+        source,
+        "    GWT.runAsync(B.class, new RunAsyncCallback() {\n"
+            + "      @Override\n"
+            + "      public void onFailure(Throwable reason) {\n"
+            + "        join.onFailure(reason);\n"
+            + "      }\n"
+            + "\n"
+            + "      @Override\n"
+            + "      public void onSuccess() {\n"
+            + "        join.load(1, () -> new B());\n"
+            + "      }\n"
+            + "    });\n");
+  }
+
+  @Test
+  public void generatesLoadAsyncOnlyForSelectedServices() {
+    assertFalse(
+        generate(GeneratorOptions.defaults().asyncServices(service -> false))
+            .contains("loadAsync"));
+  }
+
+  private static String generate() {
+    return generate(GeneratorOptions.defaults());
+  }
+
+  private static String generate(GeneratorOptions options) {
+    return new ServiceLoaderGenerator(List.of(), options)
+        .generate(service(impl("com.example", "A"), impl("com.example.impl", "B")))
+        .toString();
+  }
+
+  private static ServiceDefinition service(ServiceImplementation... impls) {
+    return new ServiceDefinition(
+        "com.example.Service", ClassName.get("com.example", "Service"), List.of(impls));
+  }
+
+  private static ServiceLoaderGenerator generator() {
+    return new ServiceLoaderGenerator(List.of(), GeneratorOptions.defaults());
+  }
+
+  private static ServiceImplementation impl(String packageName, String simpleName) {
+    return implementation(packageName, simpleName, null, ServiceScope.Scope.PROTOTYPE);
+  }
+
+  private static ServiceImplementation keyed(String packageName, String simpleName, String key) {
+    return implementation(packageName, simpleName, key, ServiceScope.Scope.PROTOTYPE);
+  }
+
+  private static ServiceImplementation singleton(String packageName, String simpleName) {
+    return implementation(packageName, simpleName, null, ServiceScope.Scope.SINGLETON);
+  }
+
+  private static ServiceImplementation implementation(
+      String packageName, String simpleName, String key, ServiceScope.Scope scope) {
+    return new ServiceImplementation(
+        packageName + "." + simpleName,
+        ClassName.get(packageName, simpleName),
+        key,
+        scope,
+        List.of());
+  }
+
+  private static void assertContains(String source, String... fragments) {
+    for (String fragment : fragments) {
+      assertTrue("Missing:\n" + fragment + "\nin:\n" + source, source.contains(fragment));
+    }
+  }
+}
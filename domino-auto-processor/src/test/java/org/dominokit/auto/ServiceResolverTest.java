@@ -0,0 +1,269 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import javax.tools.Diagnostic;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ServiceResolverTest {
+
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void resolvesNestedImplementationsListedWithBinaryNames() throws Exception {
+    TestCompiler compiler =
+        compiler().service("com.example.Service", "com.example.Outer$Nested").compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertTrue(
+        compiler
+            .generated("com.example.Service_ServiceLoader")
+            .contains("services.add(new Outer.Nested());"));
+  }
+
+  @Test
+  public void reportsInvalidImplementations() throws Exception {
+    TestCompiler compiler =
+        compiler()
+            .service(
+                "com.example.Service",
+                "com.example.Valid",
+                "com.example.NotAService",
+                "com.example.NoDefaultConstructor",
+                "com.example.Missing")
+            .option(DominoAutoProcessor.DOMINO_AUTO_PRUNE_INVALID, "true")
+            .compile();
+
+    List<String> warnings = compiler.messages(Diagnostic.Kind.WARNING);
+    assertContainsMessage(warnings, "[com.example.NotAService]", "does not implement");
+    assertContainsMessage(
+        warnings,
+        "[com.example.NoDefaultConstructor]",
+        "does not have a public no-arg constructor");
+    assertContainsMessage(warnings, "[com.example.Missing]", "cannot be found");
+
+    assertTrue(compiler.success());
+    String loader = compiler.generated("com.example.Service_ServiceLoader");
+    assertTrue(loader.contains("services.add(new Valid());"));
+    assertFalse(loader.contains("NotAService"));
+    assertFalse(loader.contains("NoDefaultConstructor"));
+    assertFalse(loader.contains("Missing"));
+  }
+
+  @Test
+  public void failsTheCompilationWhenValidationIsAnError() throws Exception {
+    TestCompiler compiler =
+        compiler()
+            .service("com.example.Service", "com.example.NotAService")
+            .option(DominoAutoProcessor.DOMINO_AUTO_VALIDATION, "error")
+            .compile();
+
+    assertFalse(compiler.success());
+    assertContainsMessage(
+        compiler.messages(Diagnostic.Kind.ERROR),
+        "[com.example.NotAService]",
+        "does not implement");
+  }
+
+  @Test
+  public void generatesKeyedLookup() throws Exception {
+    TestCompiler compiler =
+        compiler()
+            .source(
+                "com.example.Keyed",
+                "package com.example;\n"
+                    + "@org.dominokit.auto.ServiceKey(\"keyed\")\n"
+                    + "public class Keyed implements Service {}\n")
+            .service("com.example.Service", "com.example.Valid", "com.example.Keyed")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    assertTrue(
+        compiler
+            .generated("com.example.Service_ServiceLoader")
+            .contains("      case \"keyed\":\n        return Optional.of(new Keyed());\n"));
+  }
+
+  @Test
+  public void reportsDuplicateServiceKeys() throws Exception {
+    TestCompiler compiler =
+        compiler()
+            .source(
+                "com.example.First",
+                "package com.example;\n"
+                    + "@org.dominokit.auto.ServiceKey(\"same\")\n"
+                    + "public class First implements Service {}\n")
+            .source(
+                "com.example.Second",
+                "package com.example;\n"
+                    + "@org.dominokit.auto.ServiceKey(\"same\")\n"
+                    + "public class Second implements Service {}\n")
+            .service("com.example.Service", "com.example.First", "com.example.Second")
+            .compile();
+
+    assertFalse(compiler.success());
+    assertContainsMessage(
+        compiler.messages(Diagnostic.Kind.ERROR),
+        "[com.example.Second]",
+        "service key [same] already used by [com.example.First]");
+  }
+
+  @Test
+  public void leavesOutImplementationsWhoseConditionDoesNotMatch() throws Exception {
+    String dev = conditionalLoader("dev");
+    assertTrue(dev.contains("new Valid()"));
+    assertTrue(dev.contains("new Dev()"));
+    assertTrue(dev.contains("new Tenant()"));
+    assertFalse(dev.contains("new Debug()"));
+
+    assertFalse(conditionalLoader("prod").contains("new Dev()"));
+  }
+
+  @Test
+  public void sortsImplementationsAfterTheirDependenciesThenByOrder() throws Exception {
+    TestCompiler compiler =
+        compiler()
+            .source(
+                "com.example.Early",
+                "package com.example;\n"
+                    + "@org.dominokit.auto.ServiceOrder(-1)\n"
+                    + "public class Early implements Service {}\n")
+            .source(
+                "com.example.Plugin",
+                "package com.example;\n"
+                    + "@org.dominokit.auto.ServiceOrder(dependsOn = {Valid.class, String.class})\n"
+                    + "public class Plugin implements Service {}\n")
+            .service(
+                "com.example.Service",
+                "com.example.Plugin",
+                "com.example.Valid",
+                "com.example.Early")
+            .option(DominoAutoProcessor.DOMINO_AUTO_INIT_ALL, "com.example")
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    String loader = compiler.generated("com.example.Service_ServiceLoader");
+    assertTrue(
+        loader,
+        loader.contains(
+            "    services.add(new Early());\n"
+                + "    services.add(new Valid());\n"
+                + "    services.add(new Plugin());\n"));
+    assertTrue(loader.contains("initAll(Executor executor"));
+  }
+
+  @Test
+  public void reportsDependencyCycles() throws Exception {
+    TestCompiler compiler =
+        compiler()
+            .source(
+                "com.example.First",
+                "package com.example;\n"
+                    + "@org.dominokit.auto.ServiceOrder(dependsOn = Second.class)\n"
+                    + "public class First implements Service {}\n")
+            .source(
+                "com.example.Second",
+                "package com.example;\n"
+                    + "@org.dominokit.auto.ServiceOrder(dependsOn = First.class)\n"
+                    + "public class Second implements Service {}\n")
+            .service("com.example.Service", "com.example.First", "com.example.Second")
+            .compile();
+
+    assertFalse(compiler.success());
+    assertContainsMessage(
+        compiler.messages(Diagnostic.Kind.ERROR),
+        "[com.example.Service]",
+        "dependency cycle : com.example.First -> com.example.Second -> com.example.First");
+  }
+
+  private String conditionalLoader(String profile) throws Exception {
+    TestCompiler compiler =
+        new TestCompiler(temp.newFolder(profile).toPath())
+            .source(
+                "com.example.app.package-info",
+                "@org.dominokit.auto.DominoAuto(include = \"com.example\")\n"
+                    + "package com.example.app;\n")
+            .source("com.example.Service", "package com.example;\npublic interface Service {}\n")
+            .source(
+                "com.example.Valid",
+                "package com.example;\npublic class Valid implements Service {}\n")
+            .source(
+                "com.example.Dev",
+                "package com.example;\n"
+                    + "@org.dominokit.auto.ServiceCondition(property = \"appProfile\","
+                    + " havingValue = {\"dev\", \"test\"})\n"
+                    + "public class Dev implements Service {}\n")
+            .source(
+                "com.example.Tenant",
+                "package com.example;\n"
+                    + "@org.dominokit.auto.ServiceCondition(property = \"tenantFeatures\","
+                    + " matchIfMissing = true)\n"
+                    + "public class Tenant implements Service {}\n")
+            .source(
+                "com.example.Debug",
+                "package com.example;\n"
+                    + "@org.dominokit.auto.ServiceCondition(property = \"debugTools\")\n"
+                    + "public class Debug implements Service {}\n")
+            .service(
+                "com.example.Service",
+                "com.example.Valid",
+                "com.example.Dev",
+                "com.example.Tenant",
+                "com.example.Debug")
+            .option("appProfile", profile)
+            .compile();
+
+    assertTrue(compiler.messages(Diagnostic.Kind.ERROR).toString(), compiler.success());
+    return compiler.generated("com.example.Service_ServiceLoader");
+  }
+
+  private TestCompiler compiler() throws Exception {
+    return new TestCompiler(temp.getRoot().toPath())
+        .source(
+            "com.example.app.package-info",
+            "@org.dominokit.auto.DominoAuto(include = \"com.example\")\n"
+                + "package com.example.app;\n")
+        .source("com.example.Service", "package com.example;\npublic interface Service {}\n")
+        .source(
+            "com.example.Valid", "package com.example;\npublic class Valid implements Service {}\n")
+        .source("com.example.NotAService", "package com.example;\npublic class NotAService {}\n")
+        .source(
+            "com.example.NoDefaultConstructor",
+            "package com.example;\n"
+                + "public class NoDefaultConstructor implements Service {\n"
+                + "  public NoDefaultConstructor(String value) {}\n"
+                + "}\n")
+        .source(
+            "com.example.Outer",
+            "package com.example;\n"
+                + "public class Outer {\n"
+                + "  public static class Nested implements Service {}\n"
+                + "}\n");
+  }
+
+  private static void assertContainsMessage(List<String> messages, String... fragments) {
+    assertTrue(
+        messages.toString(),
+        messages.stream()
+            .anyMatch(message -> List.of(fragments).stream().allMatch(message::contains)));
+  }
+}
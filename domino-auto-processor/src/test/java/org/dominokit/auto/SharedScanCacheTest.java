@@ -0,0 +1,181 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SharedScanCacheTest {
+
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  private final Map<String, CompletableFuture<Map<String, Set<String>>>> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private final List<List<File>> scans = Collections.synchronizedList(new ArrayList<>());
+
+  @Test
+  public void scansJarsOnceAndDirectoriesEveryTime() throws Exception {
+    File jar = temp.newFile("a.jar");
+    File directory = temp.newFolder("classes");
+
+    SharedScanCache first = new SharedScanCache(entries, 10);
+    first.scan(List.of(jar, directory), this::scan);
+    SharedScanCache second = new SharedScanCache(entries, 10);
+    Map<String, Map<String, Set<String>>> result = second.scan(List.of(jar, directory), this::scan);
+
+    assertEquals(List.of(List.of(jar, directory), List.of(directory)), scans);
+    assertEquals(services(jar), result.get(ServiceScanner.pathOf(jar)));
+    assertEquals(services(directory), result.get(ServiceScanner.pathOf(directory)));
+    assertEquals(1, second.hits());
+    assertEquals(0, second.misses());
+  }
+
+  @Test
+  public void sharedCachesKeepTheirEntriesOutOfTheSystemProperties() throws Exception {
+    File jar = temp.newFile("shared.jar");
+
+    SharedScanCache.shared(10).scan(List.of(jar), this::scan);
+    SharedScanCache second = SharedScanCache.shared(10);
+    second.scan(List.of(jar), this::scan);
+
+    assertEquals(List.of(List.of(jar), List.of()), scans);
+    assertEquals(1, second.hits());
+    assertTrue(System.getProperties().values().stream().allMatch(value -> value instanceof String));
+  }
+
+  @Test
+  public void scansOnlyTheMissingJarsOfTheScannerClasspath() throws Exception {
+    File a = jar("a.jar");
+    File b = jar("b.jar");
+    File c = jar("c.jar");
+    ProcessorMetrics metrics = new ProcessorMetrics();
+    ServiceScanner scanner =
+        new ServiceScanner(null, List.of(a, b, c), 0, Set.of(), Set.of(), metrics, entry -> {});
+
+    Map<String, Map<String, Set<String>>> first =
+        new SharedScanCache(entries, 10).scan(List.of(a, b), scanner::scan);
+    assertEquals(Set.of(ServiceScanner.pathOf(a), ServiceScanner.pathOf(b)), first.keySet());
+    assertEquals(2, metrics.counter(ProcessorMetrics.ELEMENTS_SCANNED));
+
+    SharedScanCache second = new SharedScanCache(entries, 10);
+    Map<String, Map<String, Set<String>>> result = second.scan(List.of(a, b, c), scanner::scan);
+    assertEquals(3, metrics.counter(ProcessorMetrics.ELEMENTS_SCANNED));
+    assertEquals(2, second.hits());
+    assertEquals(services(c), result.get(ServiceScanner.pathOf(c)));
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedJars() throws Exception {
+    File a = temp.newFile("a.jar");
+    File b = temp.newFile("b.jar");
+    File c = temp.newFile("c.jar");
+
+    new SharedScanCache(entries, 2).scan(List.of(a, b), this::scan);
+    new SharedScanCache(entries, 2).scan(List.of(a), this::scan);
+    new SharedScanCache(entries, 2).scan(List.of(c), this::scan);
+    new SharedScanCache(entries, 2).scan(List.of(a, b), this::scan);
+
+    assertEquals(List.of(List.of(a, b), List.of(), List.of(c), List.of(b)), scans);
+  }
+
+  @Test
+  public void concurrentCompilationsWaitForTheJarBeingScanned() throws Exception {
+    File jar = temp.newFile("a.jar");
+    CountDownLatch scanning = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Map<String, Map<String, Set<String>>>> first =
+          executor.submit(
+              () ->
+                  new SharedScanCache(entries, 10)
+                      .scan(
+                          List.of(jar),
+                          elements -> {
+                            scanning.countDown();
+                            await(release);
+                            return scan(elements);
+                          }));
+      scanning.await();
+      Future<Map<String, Map<String, Set<String>>>> second =
+          executor.submit(() -> new SharedScanCache(entries, 10).scan(List.of(jar), this::scan));
+      release.countDown();
+
+      assertEquals(first.get(), second.get());
+      assertEquals(List.of(List.of(jar)), nonEmptyScans());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private List<List<File>> nonEmptyScans() {
+    return scans.stream().filter(elements -> !elements.isEmpty()).collect(Collectors.toList());
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Map<String, Map<String, Set<String>>> scan(List<File> elements) {
+    scans.add(List.copyOf(elements));
+    Map<String, Map<String, Set<String>>> result = new HashMap<>();
+    elements.forEach(element -> result.put(ServiceScanner.pathOf(element), services(element)));
+    return result;
+  }
+
+  private File jar(String name) throws IOException {
+    File jar = temp.newFile(name);
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+      out.putNextEntry(new JarEntry("META-INF/services/com.example.Service"));
+      out.write(("com.example." + name + "\n").getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+    return jar;
+  }
+
+  private static Map<String, Set<String>> services(File element) {
+    return Map.of("com.example.Service", Set.of("com.example." + element.getName()));
+  }
+}
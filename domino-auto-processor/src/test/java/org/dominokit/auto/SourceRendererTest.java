@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import static org.junit.Assert.assertEquals;
+
+import com.squareup.javapoet.ClassName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class SourceRendererTest {
+
+  private static final int SERVICES = 200;
+
+  @Test
+  public void rendersInParallelTheSameSourcesInTheSameOrder() {
+    List<Supplier<List<GeneratedSource>>> generators = generators();
+
+    List<GeneratedSource> sequential = new SourceRenderer(1).render(generators);
+    List<GeneratedSource> parallel = new SourceRenderer(4).render(generators);
+
+    assertEquals(SERVICES, parallel.size());
+    assertEquals(contents(sequential), contents(parallel));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rethrowsGeneratorFailures() {
+    List<Supplier<List<GeneratedSource>>> generators = new ArrayList<>(generators().subList(0, 10));
+    generators.add(
+        () -> {
+          throw new IllegalArgumentException("invalid service");
+        });
+    new SourceRenderer(2).render(generators);
+  }
+
+  private static List<Supplier<List<GeneratedSource>>> generators() {
+    ServiceLoaderGenerator generator =
+        new ServiceLoaderGenerator(List.of(), GeneratorOptions.defaults());
+    List<Supplier<List<GeneratedSource>>> generators = new ArrayList<>();
+    for (int i = 0; i < SERVICES; i++) {
+      String packageName = "com.example.synthetic" + (i % 50);
+      ServiceDefinition service =
+          new ServiceDefinition(
+              packageName + ".Service" + i,
+              ClassName.get(packageName, "Service" + i),
+              List.of(impl(packageName, "First" + i), impl(packageName, "Second" + i)));
+      generators.add(() -> List.of(generator.generate(service)));
+    }
+    return generators;
+  }
+
+  private static ServiceImplementation impl(String packageName, String simpleName) {
+    return new ServiceImplementation(
+        packageName + "." + simpleName,
+        ClassName.get(packageName, simpleName),
+        null,
+        ServiceScope.Scope.PROTOTYPE,
+        List.of());
+  }
+
+  private static List<String> contents(List<GeneratedSource> sources) {
+    return sources.stream()
+        .map(source -> source.qualifiedName() + "\n" + source.content())
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright © 2019 Dominokit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dominokit.auto;
+
+import io.github.classgraph.ClassGraph;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles sources with {@link DominoAutoProcessor} in a temporary directory, the services files
+ * written with {@link #service(String, String...)} form the scanned classpath.
+ */
+class TestCompiler {
+
+  private final Path root;
+  private final List<String> options = new ArrayList<>();
+  private final List<Path> jars = new ArrayList<>();
+  private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+  private boolean success;
+
+  TestCompiler(Path root) {
+    this.root = root;
+  }
+
+  TestCompiler source(String qualifiedName, String code) throws IOException {
+    write(root.resolve("src").resolve(qualifiedName.replace('.', '/') + ".java"), code);
+    return this;
+  }
+
+  TestCompiler service(String service, String... impls) throws IOException {
+    write(root.resolve("lib/META-INF/services").resolve(service), String.join("\n", impls) + "\n");
+    return this;
+  }
+
+  /** Writes, or rewrites, a jar holding a services file to the scanned classpath. */
+  TestCompiler libraryJar(String fileName, String service, String... impls) throws IOException {
+    Path jar = root.resolve("jars").resolve(fileName);
+    Files.createDirectories(jar.getParent());
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new JarEntry("META-INF/services/" + service));
+      out.write((String.join("\n", impls) + "\n").getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+    if (!jars.contains(jar)) {
+      jars.add(jar);
+    }
+    return this;
+  }
+
+  /** Writes a resource to the scanned classpath. */
+  TestCompiler libraryResource(String path, String content) throws IOException {
+    write(root.resolve("lib").resolve(path), content);
+    return this;
+  }
+
+  /** @return the content of a resource written to the class output. */
+  String output(String path) throws IOException {
+    return new String(
+        Files.readAllBytes(root.resolve("out").resolve(path)), StandardCharsets.UTF_8);
+  }
+
+  /** Writes a services file to the class output, like resources copied before the compilation. */
+  TestCompiler classOutputService(String service, String... impls) throws IOException {
+    write(root.resolve("out/META-INF/services").resolve(service), String.join("\n", impls) + "\n");
+    return this;
+  }
+
+  TestCompiler option(String name, String value) {
+    options.add("-A" + name + "=" + value);
+    return this;
+  }
+
+  TestCompiler compile() throws IOException {
+    Path out = Files.createDirectories(root.resolve("out"));
+    Path generated = Files.createDirectories(root.resolve("generated"));
+    Path lib = Files.createDirectories(root.resolve("lib"));
+    List<File> sources;
+    try (Stream<Path> files = Files.walk(root.resolve("src"))) {
+      sources =
+          files
+              .filter(file -> file.toString().endsWith(".java"))
+              .map(Path::toFile)
+              .collect(Collectors.toList());
+    }
+
+    String scannedClasspath =
+        Stream.concat(Stream.of(lib), jars.stream())
+            .map(Path::toString)
+            .collect(Collectors.joining(File.pathSeparator));
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+      List<String> arguments = new ArrayList<>(options);
+      arguments.addAll(
+          Arrays.asList(
+              "-classpath",
+              scannedClasspath + File.pathSeparator + new ClassGraph().getClasspath(),
+              "-d",
+              out.toString(),
+              "-s",
+              generated.toString(),
+              "-A" + DominoAutoProcessor.DOMINO_AUTO_CLASSPATH + "=" + scannedClasspath));
+      JavaCompiler.CompilationTask task =
+          compiler.getTask(
+              new StringWriter(),
+              fileManager,
+              diagnostics,
+              arguments,
+              null,
+              fileManager.getJavaFileObjectsFromFiles(sources));
+      task.setProcessors(List.of(new DominoAutoProcessor()));
+      success = task.call();
+    }
+    return this;
+  }
+
+  boolean success() {
+    return success;
+  }
+
+  /** @return the messages reported with the given kind. */
+  List<String> messages(Diagnostic.Kind kind) {
+    return diagnostics.getDiagnostics().stream()
+        .filter(diagnostic -> diagnostic.getKind() == kind)
+        .map(diagnostic -> diagnostic.getMessage(Locale.ROOT))
+        .collect(Collectors.toList());
+  }
+
+  String generated(String qualifiedName) throws IOException {
+    return new String(
+        Files.readAllBytes(
+            root.resolve("generated").resolve(qualifiedName.replace('.', '/') + ".java")),
+        StandardCharsets.UTF_8);
+  }
+
+  boolean isGenerated(String qualifiedName) {
+    return Files.exists(
+        root.resolve("generated").resolve(qualifiedName.replace('.', '/') + ".java"));
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}